@@ -0,0 +1,77 @@
+/**
+ * @brief Offscreen code_swarm sketches for the workloads of the JMH benchmarks
+ *
+ * The sketch goes through its real setup() with data/sample.config, so that the physics
+ * engine, the colors and the random streams are configured as for a render, but it never
+ * draws a frame: the workloads build the swarm they measure themselves.
+ */
+class BenchSketch {
+
+  private BenchSketch() {
+  }
+
+  /**
+   * @param settings Key=Value settings overriding data/sample.config
+   * @return the sketch, set up
+   */
+  static code_swarm create(String... settings) throws Exception {
+    CodeSwarmConfig config = new CodeSwarmConfig("data/sample.config");
+    config.setOverrides(new String[] {
+        CodeSwarmConfig.INPUT_FILE_KEY + "=data/test.xml",
+        CodeSwarmConfig.TAKE_SNAPSHOTS_KEY + "=false",
+        CodeSwarmConfig.RANDOM_SEED_KEY + "=1",
+        CodeSwarmConfig.PHYSICS_ENGINE_SELECTION + "=PhysicsEngineWiki"}, 0);
+    config.setOverrides(settings, 0);
+    // code_swarm must not be loaded before createSketch() sets up AWT
+    code_swarm sketch = HeadlessRender.createSketch();
+    code_swarm.cfg = config;
+    sketch.init();
+    while (sketch.frameCount == 0 && !sketch.finished) {
+      sketch.handleDisplay();
+    }
+    // the swarms are named in the name tables of the sketch, which the loader fills too
+    while (!sketch.finishedLoading) {
+      Thread.sleep(10);
+    }
+    return sketch;
+  }
+
+  /**
+   * Add a swarm to the sketch: one person for 20 files, and an edge from every file to one
+   * person, to a second one for a third of the files. Everything is alive.
+   * @param sketch sketch set up by create()
+   * @param files number of files
+   */
+  static void populate(code_swarm sketch, int files) {
+    int peopleCount = Math.max(1, files / 20);
+    code_swarm.PersonNode[] people = new code_swarm.PersonNode[peopleCount];
+    for (int i = 0; i < peopleCount; i++) {
+      String name = "person" + i;
+      people[i] = sketch.new PersonNode(name);
+      sketch.people.put(sketch.authorNames.intern(name), people[i]);
+      sketch.livingPeople.add(people[i]);
+    }
+    for (int i = 0; i < files; i++) {
+      code_swarm.PersonNode p = people[i % peopleCount];
+      String name = "src" + (i % 10) + "/file" + i;
+      code_swarm.Event e = sketch.new Event(0, p.name, sketch.authorNames.find(p.name), name,
+          sketch.fileNames.intern(name), 1);
+      code_swarm.WikiNode n = sketch.new WikiNode(e);
+      sketch.nodes.put(e.fileId, n);
+      sketch.livingNodes.add(n);
+      connect(sketch, n, p);
+      if (i % 3 == 0) {
+        connect(sketch, n, people[(i * 7 + 1) % peopleCount]);
+      }
+    }
+    sketch.livingPeople.updateMostActive();
+  }
+
+  private static void connect(code_swarm sketch, code_swarm.WikiNode n, code_swarm.PersonNode p) {
+    if (sketch.findEdge(n, p) == null) {
+      code_swarm.Edge e = sketch.new Edge(n, p, 1);
+      sketch.edges.put(e);
+      sketch.livingEdges.add(e);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.codeswarm.bench.Workload;
+import org.codeswarm.bench.Workloads;
+
+/**
+ * @brief Colors of a batch of file names, for ColorAssignerBenchmark
+ */
+public class ColorAssignerWorkload implements Workload {
+
+  private ColorAssigner assigner;
+  private String[] names;
+  private int next = 0;
+
+  /**
+   * @param params config file with the ColorAssign rules, event file with the names, number
+   *        of extra rules tried before those of the config
+   */
+  public void setUp(String... params) throws Exception {
+    // ColorTest uses PApplet, whose class initialization needs the offscreen toolkit
+    HeadlessRender.createSketch();
+    // the rules as code_swarm.initColors() loads them
+    CodeSwarmConfig config = new CodeSwarmConfig(params[0]);
+    assigner = new ColorAssigner(new SimulationRandom(1, SimulationRandom.COLOR));
+    int extra = Integer.parseInt(params[2]);
+    for (int i = 0; i < extra; i++) {
+      // the shapes of the rules of real configs, matching none of the names
+      String[] exprs = {".*module" + i + "\\.[ch]", "lib" + i + "/.*", ".*\\.ext" + i,
+          ".*dir" + i + ".*"};
+      assigner.addRule("Extra" + i, exprs[i % exprs.length], 0, 0);
+    }
+    String property;
+    for (int i = 1; (property = config.getColorAssignProperty(i)) != null; i++) {
+      ColorTest ct = new ColorTest();
+      ct.loadProperty(property);
+      assigner.addRule(ct);
+    }
+    ColorTest ct = new ColorTest();
+    ct.loadProperty(CodeSwarmConfig.DEFAULT_COLOR_ASSIGN);
+    assigner.addRule(ct);
+
+    final Set<String> files = new LinkedHashSet<String>();
+    InputStream in = new FileInputStream(params[1]);
+    try {
+      new EventStreamReader().read(in, new EventStreamReader.Handler() {
+        public void event(String filename, long date, String author, int weight) {
+          files.add(filename);
+        }
+      });
+    } finally {
+      in.close();
+    }
+    List<String> shuffled = new ArrayList<String>(files);
+    SimulationRandom random = new SimulationRandom(1, SimulationRandom.LAYOUT);
+    for (int i = shuffled.size() - 1; i > 0; i--) {
+      shuffled.set(i, shuffled.set((int) (random.nextFloat() * (i + 1)), shuffled.get(i)));
+    }
+    names = shuffled.toArray(new String[shuffled.size()]);
+  }
+
+  public void prepare() {
+  }
+
+  public long run() {
+    long sum = 0;
+    for (int i = 0; i < Workloads.BATCH; i++) {
+      sum += assigner.getColor(names[next]);
+      if (++next == names.length) {
+        next = 0;
+      }
+    }
+    return sum;
+  }
+}
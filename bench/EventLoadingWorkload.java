@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import org.codeswarm.bench.Workload;
+
+/**
+ * @brief Reading of a whole event file, for EventLoadingBenchmark
+ */
+public class EventLoadingWorkload implements Workload {
+
+  /**
+   * Handler folding every event into a checksum.
+   */
+  private static class Checksum implements EventStreamReader.Handler {
+    long sum = 0;
+
+    public void event(String filename, long date, String author, int weight) {
+      sum = sum * 31 + date;
+      sum = sum * 31 + weight;
+      sum = sum * 31 + (filename == null ? 0 : filename.hashCode());
+      sum = sum * 31 + (author == null ? 0 : author.hashCode());
+    }
+  }
+
+  private File file;
+  private boolean binary;
+
+  /**
+   * @param params XML event file, xml or binary
+   */
+  public void setUp(String... params) throws Exception {
+    file = new File(params[0]);
+    binary = params[1].equals("binary");
+    if (binary) {
+      File log = File.createTempFile("benchmark", BinaryEventLog.EXTENSION);
+      log.deleteOnExit();
+      BinaryEventLog.convert(file, log);
+      file = log;
+    }
+  }
+
+  public void prepare() {
+  }
+
+  public long run() throws Exception {
+    Checksum checksum = new Checksum();
+    if (binary) {
+      BinaryEventLog.read(file, checksum);
+    } else {
+      InputStream in = new FileInputStream(file);
+      try {
+        new EventStreamReader().read(in, checksum);
+      } finally {
+        in.close();
+      }
+    }
+    return checksum.sum;
+  }
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * @brief Compare the byte-level EventStreamReader with the SAX loader it replaced
+ *
+ * Both readers parse the same files and feed the same handler, which only checksums the
+ * events, so the times measure the parsing alone. The checksums of both readers must match.
+ * Every file is also converted to a temporary BinaryEventLog, whose reader is timed the same
+ * way.
+ *
+ * Usage: java EventReaderBenchmark [iterations] [file.xml ...]
+ * (defaults to 10 iterations over the bundled data/*.xml files), or "ant benchreader".
+ */
+public class EventReaderBenchmark {
+
+  /**
+   * Handler folding every event into a checksum.
+   */
+  private static class Checksum implements EventStreamReader.Handler {
+    long sum = 0;
+    int count = 0;
+
+    public void event(String filename, long date, String author, int weight) {
+      sum = sum * 31 + date;
+      sum = sum * 31 + weight;
+      sum = sum * 31 + (filename == null ? 0 : filename.hashCode());
+      sum = sum * 31 + (author == null ? 0 : author.hashCode());
+      count++;
+    }
+  }
+
+  /**
+   * The SAX handling of the former code_swarm.XMLQueueLoader, on the reader that
+   * XMLReaderFactory.createXMLReader() returned.
+   */
+  private static void readSax(File file, final Checksum checksum) throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader reader = factory.newSAXParser().getXMLReader();
+    reader.setContentHandler(new DefaultHandler() {
+      public void startElement(String uri, String localName, String name, Attributes atts)
+          throws SAXException {
+        if (name.equals("event")) {
+          String eventFilename = atts.getValue("filename");
+          String eventDatestr = atts.getValue("date");
+          long eventDate = Long.parseLong(eventDatestr);
+          String eventWeightStr = atts.getValue("weight");
+          int eventWeight = 1;
+          if (eventWeightStr != null) {
+            eventWeight = Integer.parseInt(eventWeightStr);
+          }
+          String eventAuthor = atts.getValue("author");
+          checksum.event(eventFilename, eventDate, eventAuthor, eventWeight);
+        }
+      }
+    });
+    reader.parse(file.getPath());
+  }
+
+  private static void readStream(File file, Checksum checksum) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      new EventStreamReader().read(in, checksum);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static final int SAX = 0;
+  private static final int STREAM = 1;
+  private static final int BINARY = 2;
+  private static final String[] NAMES = {"SAX", "stream", "binary"};
+
+  private static void read(File file, int reader, Checksum checksum) throws Exception {
+    if (reader == SAX) {
+      readSax(file, checksum);
+    } else if (reader == STREAM) {
+      readStream(file, checksum);
+    } else {
+      BinaryEventLog.read(file, checksum);
+    }
+  }
+
+  /**
+   * @param file file to read
+   * @param reader SAX, STREAM or BINARY
+   * @param iterations number of timed reads
+   * @return checksum of the last read
+   */
+  private static Checksum time(File file, int reader, int iterations) throws Exception {
+    Checksum checksum = null;
+    long best = Long.MAX_VALUE;
+    long total = 0;
+    AllocationCounter allocations = new AllocationCounter();
+    // warm up, untimed
+    for (int i = 0; i < Math.max(1, iterations / 2); i++) {
+      checksum = new Checksum();
+      read(file, reader, checksum);
+    }
+    for (int i = 0; i < iterations; i++) {
+      checksum = new Checksum();
+      allocations.start();
+      long start = System.nanoTime();
+      read(file, reader, checksum);
+      long elapsed = System.nanoTime() - start;
+      allocations.stop();
+      best = Math.min(best, elapsed);
+      total += elapsed;
+    }
+    double mb = file.length() / (1024.0 * 1024.0);
+    System.out.println(String.format("  %-6s best %8.2f ms  mean %8.2f ms  %7.1f MB/s  %5.1f M events/s  %8d KB allocated",
+        NAMES[reader], best / 1e6, total / 1e6 / iterations, mb / (best / 1e9),
+        checksum.count / (best / 1e9) / 1e6, allocations.getLastBytes() / 1024));
+    return checksum;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = 10;
+    int first = 0;
+    if (args.length > 0 && args[0].matches("\\d+")) {
+      iterations = Integer.parseInt(args[0]);
+      first = 1;
+    }
+    File[] files;
+    if (args.length > first) {
+      files = new File[args.length - first];
+      for (int i = first; i < args.length; i++) {
+        files[i - first] = new File(args[i]);
+      }
+    } else {
+      files = new File("data").listFiles();
+    }
+
+    boolean mismatch = false;
+    for (File file : files) {
+      if (!file.getName().endsWith(".xml")) {
+        continue;
+      }
+      System.out.println(file + " (" + file.length() / 1024 + " KB)");
+      Checksum sax = time(file, SAX, iterations);
+      Checksum stream = time(file, STREAM, iterations);
+      File log = File.createTempFile("benchmark", BinaryEventLog.EXTENSION);
+      Checksum binary;
+      try {
+        BinaryEventLog.convert(file, log);
+        binary = time(log, BINARY, iterations);
+        System.out.println("  binary log is " + log.length() / 1024 + " KB");
+      } finally {
+        log.delete();
+      }
+      boolean same = sax.count == stream.count && sax.sum == stream.sum
+          && sax.count == binary.count && sax.sum == binary.sum;
+      System.out.println("  " + stream.count + " events, " + (same ? "same events" : "MISMATCH"));
+      mismatch |= !same;
+    }
+    if (mismatch) {
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+import org.codeswarm.bench.Workload;
+import org.codeswarm.bench.Workloads;
+
+/**
+ * @brief Edge lookups of a batch of file and person pairs, for FindEdgeBenchmark
+ */
+public class FindEdgeWorkload implements Workload {
+
+  private code_swarm sketch;
+  private code_swarm.WikiNode[] files;
+  private code_swarm.PersonNode[] people;
+  private int next = 0;
+
+  /**
+   * @param params number of files
+   */
+  public void setUp(String... params) throws Exception {
+    sketch = BenchSketch.create();
+    BenchSketch.populate(sketch, Integer.parseInt(params[0]));
+
+    code_swarm.WikiNode[] allFiles = sketch.nodes.toArray(new code_swarm.WikiNode[0]);
+    code_swarm.PersonNode[] allPeople = sketch.people.toArray(new code_swarm.PersonNode[0]);
+    code_swarm.Edge[] edges = sketch.edges.toArray(new code_swarm.Edge[0]);
+    SimulationRandom random = new SimulationRandom(1, SimulationRandom.LAYOUT);
+    int count = Math.max(Workloads.BATCH, edges.length);
+    files = new code_swarm.WikiNode[count];
+    people = new code_swarm.PersonNode[count];
+    for (int i = 0; i < count; i++) {
+      if (i % 4 == 3) {
+        // most likely not connected
+        files[i] = allFiles[(int) (random.nextFloat() * allFiles.length)];
+        people[i] = allPeople[(int) (random.nextFloat() * allPeople.length)];
+      } else {
+        code_swarm.Edge e = edges[(int) (random.nextFloat() * edges.length)];
+        files[i] = e.nodeFrom;
+        people[i] = e.nodeTo;
+      }
+    }
+  }
+
+  public void prepare() {
+  }
+
+  public long run() {
+    long found = 0;
+    for (int i = 0; i < Workloads.BATCH; i++) {
+      if (sketch.findEdge(files[next], people[next]) != null) {
+        found++;
+      }
+      if (++next == files.length) {
+        next = 0;
+      }
+    }
+    return found;
+  }
+}
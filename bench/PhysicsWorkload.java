@@ -0,0 +1,54 @@
+import org.codeswarm.bench.Workload;
+
+/**
+ * @brief Relax or update phase of a frame, for PhysicsBenchmark
+ */
+public class PhysicsWorkload implements Workload {
+
+  private code_swarm sketch;
+  private PhysicsEngine engine;
+  private boolean relax;
+
+  /**
+   * @param params name of the engine, number of files, relax or update
+   */
+  public void setUp(String... params) throws Exception {
+    sketch = BenchSketch.create(CodeSwarmConfig.PHYSICS_ENGINE_SELECTION + "=" + params[0]);
+    engine = sketch.mPhysicsEngine;
+    BenchSketch.populate(sketch, Integer.parseInt(params[1]));
+    relax = params[2].equals("relax");
+  }
+
+  /**
+   * Keep the swarm alive before an update, which takes a little life from everyone.
+   */
+  public void prepare() {
+    if (relax) {
+      return;
+    }
+    for (code_swarm.Edge e : sketch.livingEdges) {
+      e.freshen();
+    }
+    for (code_swarm.WikiNode n : sketch.livingNodes) {
+      n.freshen();
+    }
+    for (code_swarm.PersonNode p : sketch.livingPeople) {
+      p.freshen();
+    }
+  }
+
+  public long run() {
+    engine.initializeFrame();
+    if (relax) {
+      engine.onRelaxEdges(sketch.livingEdges);
+      engine.onRelaxNodes(sketch.livingNodes);
+      engine.onRelaxPeople(sketch.livingPeople);
+    } else {
+      engine.onUpdateEdges(sketch.livingEdges);
+      engine.onUpdateNodes(sketch.livingNodes);
+      engine.onUpdatePeople(sketch.livingPeople);
+    }
+    engine.finalizeFrame();
+    return sketch.livingNodes.size();
+  }
+}
@@ -0,0 +1,50 @@
+package org.codeswarm.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @brief ColorAssigner.getColor() with the ColorAssign rules of data/sample.config
+ *
+ * The file names come from data/obama.xml, an operation is the color of one of them. The
+ * extra rules come first and match none of the names, to show the cost of a rule: they are
+ * a mix of literal rules, which skip the regex engine, and of regexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.desktop/java.awt=ALL-UNNAMED"})
+public class ColorAssignerBenchmark {
+
+  /** Number of extra rules */
+  @Param({"0", "20", "100"})
+  public int rules;
+
+  private Workload workload;
+
+  @Setup
+  public void setUp() throws Exception {
+    workload = Workloads.create("ColorAssignerWorkload", "data/sample.config", "data/obama.xml",
+        Integer.toString(rules));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Workloads.BATCH)
+  public long getColor() throws Exception {
+    return workload.run();
+  }
+}
@@ -0,0 +1,51 @@
+package org.codeswarm.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @brief Reading a whole event history, as the loader thread of code_swarm does
+ *
+ * An operation reads every event of the file into a handler that only checksums them. The
+ * binary format reads a BinaryEventLog converted from the XML file during the setup.
+ * EventReaderBenchmark compares the same readers without JMH, along with the former SAX
+ * loader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLoadingBenchmark {
+
+  @Param({"data/obama.xml", "data/trump.xml"})
+  public String file;
+
+  /** xml or binary */
+  @Param({"xml", "binary"})
+  public String format;
+
+  private Workload workload;
+
+  @Setup
+  public void setUp() throws Exception {
+    workload = Workloads.create("EventLoadingWorkload", file, format);
+  }
+
+  @Benchmark
+  public long read() throws Exception {
+    return workload.run();
+  }
+}
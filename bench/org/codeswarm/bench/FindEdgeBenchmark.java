@@ -0,0 +1,49 @@
+package org.codeswarm.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @brief code_swarm.findEdge() on the swarm of PhysicsBenchmark
+ *
+ * An operation looks up one file and person pair, picked at random among the edges of the
+ * swarm. One lookup in four is for a pair without an edge, as for the first event of a
+ * person on a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.desktop/java.awt=ALL-UNNAMED"})
+public class FindEdgeBenchmark {
+
+  /** Number of files */
+  @Param({"1000", "100000"})
+  public int nodes;
+
+  private Workload workload;
+
+  @Setup
+  public void setUp() throws Exception {
+    workload = Workloads.create("FindEdgeWorkload", Integer.toString(nodes));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Workloads.BATCH)
+  public long findEdge() throws Exception {
+    return workload.run();
+  }
+}
@@ -0,0 +1,69 @@
+package org.codeswarm.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @brief One frame of a physics engine on a fixed swarm of files and people
+ *
+ * An operation is the relax or the update phase of a frame, between initializeFrame() and
+ * finalizeFrame(), on the living edges, files and people. The swarm has one person for 20
+ * files, every file has an edge to one or two people. Before an update every element is
+ * freshened, outside of the measurement, so that the swarm does not die out.
+ * <pre>
+ *   ant bench -Dbench.args="PhysicsBenchmark -p engine=PhysicsEngineBarnesHut"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.desktop/java.awt=ALL-UNNAMED"})
+public class PhysicsBenchmark {
+
+  /** Name of the engine, as in physics_engine/*.config */
+  @Param({"PhysicsEngineWiki", "PhysicsEngineCircle"})
+  public String engine;
+
+  /** Number of files */
+  @Param({"100", "1000", "10000"})
+  public int nodes;
+
+  /** relax or update */
+  @Param({"relax", "update"})
+  public String phase;
+
+  private Workload workload;
+
+  @Setup
+  public void setUp() throws Exception {
+    workload = Workloads.create("PhysicsWorkload", engine, Integer.toString(nodes), phase);
+  }
+
+  /**
+   * Freshen the swarm before every operation. Level.Invocation adds timing overhead to each
+   * operation, which only shows with the smallest swarms.
+   */
+  @Setup(Level.Invocation)
+  public void prepare() {
+    workload.prepare();
+  }
+
+  @Benchmark
+  public long frame() throws Exception {
+    return workload.run();
+  }
+}
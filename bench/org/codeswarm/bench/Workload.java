@@ -0,0 +1,31 @@
+package org.codeswarm.bench;
+
+/**
+ * @brief Code under measurement, implemented next to code_swarm in the default package
+ *
+ * JMH generates its harness in the package of the benchmark classes, which cannot be the
+ * default package, and a named package cannot refer to the classes of the default package.
+ * The benchmarks of this package therefore load their workload by name with Workloads and
+ * only call it through this interface.
+ */
+public interface Workload {
+
+  /**
+   * Build the data the workload runs on, outside of the measurement.
+   * @param params parameters of the benchmark, their meaning depends on the workload
+   * @throws Exception if the data could not be built
+   */
+  void setUp(String... params) throws Exception;
+
+  /**
+   * Get the data ready for the next run(), outside of the measurement. Only called by the
+   * benchmarks whose operation uses up its data, before every operation.
+   */
+  void prepare();
+
+  /**
+   * Run one operation of the benchmark.
+   * @return a result depending on the work done, for the benchmark to consume
+   */
+  long run() throws Exception;
+}
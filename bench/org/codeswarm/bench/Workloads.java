@@ -0,0 +1,31 @@
+package org.codeswarm.bench;
+
+/**
+ * @brief Loads the workloads of the default package
+ */
+public final class Workloads {
+
+  /** Operations of the workloads working on batches of keys */
+  public static final int BATCH = 1024;
+
+  private Workloads() {
+  }
+
+  /**
+   * @param className name of a default package class implementing Workload
+   * @param params parameters of Workload.setUp()
+   * @return the workload, set up
+   * @throws IllegalArgumentException if the class cannot be loaded or instantiated
+   * @throws Exception if its setup failed
+   */
+  public static Workload create(String className, String... params) throws Exception {
+    Workload w;
+    try {
+      w = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("Cannot create the workload " + className, e);
+    }
+    w.setUp(params);
+    return w;
+  }
+}
@@ -1,6 +1,20 @@
 # run.sh : code_swarm launching script
 # need the config file as first parameter
 
+main_class=code_swarm
+if [ "$1" == "--headless" ]; then
+    # offscreen batch render, no window needed
+    main_class=HeadlessRender
+    # read by Java 9 and later only
+    export JDK_JAVA_OPTIONS="--add-opens java.desktop/java.awt=ALL-UNNAMED"
+    shift
+elif [ "$1" == "--distributed" ]; then
+    # offscreen render split between worker processes
+    main_class=DistributedRender
+    export JDK_JAVA_OPTIONS="--add-opens java.desktop/java.awt=ALL-UNNAMED"
+    shift
+fi
+
 params=$@
 default_config="data/sample.config"
 code_swarm_jar="dist/code_swarm.jar"
@@ -19,9 +33,11 @@ if [ $# = 0 ]; then
 else
     if [ $1 == "-h" ] || [ $1 == "--help" ]; then
         # if help needed, print it and exit
-        echo "usage: run.sh <configfile>"
+        echo "usage: run.sh [--headless|--distributed] <configfile> [Key=Value...]"
         echo ""
         echo "   data/sample.config  is the default config file"
+        echo "   --headless          renders offscreen as fast as possible, without a window"
+        echo "   --distributed       renders offscreen with several worker processes"
         echo ""
         exit
     else
@@ -48,7 +64,7 @@ if [ ! -f $code_swarm_jar ]; then
 fi
 
 # running
-if java -Xmx1000m -classpath dist/code_swarm.jar:lib/core.jar:lib/xml.jar:lib/vecmath.jar:. code_swarm $params; then
+if java -Xmx1000m -classpath dist/code_swarm.jar:lib/core.jar:lib/xml.jar:lib/vecmath.jar:. $main_class $params; then
 # always on error due to no "exit buton" on rendering window
     echo "bye"
 #    echo -n "error, press a key to exit"
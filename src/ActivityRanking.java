@@ -0,0 +1,307 @@
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @brief Living people ranked by number of changed words, tracking the most active ones
+ *
+ * Binary max-heap on PersonNode.changeWords where every person remembers its slot in the
+ * heap (PersonNode.rankIndex), so that a person can be found, removed or moved after its
+ * word count changed in O(log n), without polling and re-adding anybody.
+ *
+ * Ties are broken on the node id, the person seen first ranks first, so the ranking does
+ * not depend on the order of insertions and removals.
+ *
+ * The isMostActive flag of the top N people is maintained by updateMostActive(): people
+ * entering the top get it set, people leaving the top or the ranking get it cleared.
+ *
+ * @note changeWords must only be modified through addWords() while the person is ranked.
+ */
+class ActivityRanking extends AbstractCollection<code_swarm.PersonNode> {
+
+  private code_swarm.PersonNode[] heap;
+  private int size = 0;
+  private int modCount = 0;
+
+  /** Number of people flagged as most active */
+  private final int topCount;
+  /** People currently flagged, best first */
+  private final code_swarm.PersonNode[] top;
+  private int topSize = 0;
+  /** True when the heap changed since the last updateMostActive() */
+  private boolean topDirty = false;
+  /** Heap slots candidate to the next rank while walking the top of the heap */
+  private final int[] candidates;
+
+  /**
+   * @param topCount number of people to flag as most active
+   */
+  ActivityRanking(int topCount) {
+    this.topCount = Math.max(0, topCount);
+    top = new code_swarm.PersonNode[this.topCount];
+    // every rank taken out of the candidates brings at most two children in
+    candidates = new int[this.topCount + 1];
+    heap = new code_swarm.PersonNode[64];
+  }
+
+  /**
+   * @return number of people flagged as most active
+   */
+  public int getTopCount() {
+    return topCount;
+  }
+
+  /**
+   * Rank a person, if not ranked already.
+   * @param p person to add
+   * @return true if the person was added
+   */
+  public boolean add(code_swarm.PersonNode p) {
+    if (p.rankIndex >= 0) {
+      return false;
+    }
+    if (size == heap.length) {
+      code_swarm.PersonNode[] grown = new code_swarm.PersonNode[size * 2];
+      System.arraycopy(heap, 0, grown, 0, size);
+      heap = grown;
+    }
+    place(p, size++);
+    siftUp(p.rankIndex);
+    modCount++;
+    topDirty = true;
+    return true;
+  }
+
+  /**
+   * Add words to the count of a person, moving it up in the ranking if it is ranked.
+   * @param p person
+   * @param words number of words changed, may be negative
+   */
+  public void addWords(code_swarm.PersonNode p, int words) {
+    p.changeWords += words;
+    int i = p.rankIndex;
+    if (i < 0 || words == 0) {
+      return;
+    }
+    if (words > 0) {
+      siftUp(i);
+    } else {
+      siftDown(i);
+    }
+    topDirty = true;
+  }
+
+  /**
+   * @return most active person, null if nobody is ranked
+   */
+  public code_swarm.PersonNode peek() {
+    return size == 0 ? null : heap[0];
+  }
+
+  public boolean contains(Object o) {
+    if (!(o instanceof code_swarm.PersonNode)) {
+      return false;
+    }
+    int i = ((code_swarm.PersonNode) o).rankIndex;
+    return i >= 0 && i < size && heap[i] == o;
+  }
+
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    removeAt(((code_swarm.PersonNode) o).rankIndex);
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      heap[i].rankIndex = -1;
+      heap[i] = null;
+    }
+    size = 0;
+    modCount++;
+    topDirty = true;
+  }
+
+  /**
+   * Flag the top N people as most active and unflag the ones which left the top.
+   * Does nothing if the ranking did not change since the last call.
+   */
+  public void updateMostActive() {
+    if (!topDirty) {
+      return;
+    }
+    topDirty = false;
+    for (int k = 0; k < topSize; k++) {
+      top[k].isMostActive = false;
+      top[k] = null;
+    }
+    topSize = 0;
+    if (size == 0 || topCount == 0) {
+      return;
+    }
+
+    // The next rank is always the best child of an already ranked person: walk the
+    // top of the heap keeping those children as candidates.
+    int candidateCount = 1;
+    candidates[0] = 0;
+    while (topSize < topCount && candidateCount > 0) {
+      int best = 0;
+      for (int c = 1; c < candidateCount; c++) {
+        if (before(heap[candidates[c]], heap[candidates[best]])) {
+          best = c;
+        }
+      }
+      int i = candidates[best];
+      candidates[best] = candidates[--candidateCount];
+      code_swarm.PersonNode p = heap[i];
+      p.isMostActive = true;
+      top[topSize++] = p;
+      for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+        candidates[candidateCount++] = child;
+      }
+    }
+  }
+
+  /**
+   * Iterates in heap order. Removing through the iterator keeps the heap valid and visits
+   * every remaining person exactly once.
+   */
+  public Iterator<code_swarm.PersonNode> iterator() {
+    return new Iterator<code_swarm.PersonNode>() {
+      private int next = 0;
+      private int last = -1;
+      private int expectedModCount = modCount;
+      /** People moved before the cursor by a removal, still to be visited */
+      private ArrayList<code_swarm.PersonNode> forgetMeNot = null;
+      private code_swarm.PersonNode lastForgotten = null;
+
+      public boolean hasNext() {
+        return next < size || (forgetMeNot != null && !forgetMeNot.isEmpty());
+      }
+
+      public code_swarm.PersonNode next() {
+        if (expectedModCount != modCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (next < size) {
+          last = next;
+          return heap[next++];
+        }
+        if (forgetMeNot != null && !forgetMeNot.isEmpty()) {
+          last = -1;
+          lastForgotten = forgetMeNot.remove(forgetMeNot.size() - 1);
+          return lastForgotten;
+        }
+        throw new NoSuchElementException();
+      }
+
+      public void remove() {
+        if (expectedModCount != modCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (last >= 0) {
+          code_swarm.PersonNode moved = removeAt(last);
+          if (moved == null) {
+            // slot last holds an element not visited yet
+            next = last;
+          } else {
+            // the last element went up before the cursor
+            if (forgetMeNot == null) {
+              forgetMeNot = new ArrayList<code_swarm.PersonNode>();
+            }
+            forgetMeNot.add(moved);
+          }
+          last = -1;
+        } else if (lastForgotten != null) {
+          removeAt(lastForgotten.rankIndex);
+          lastForgotten = null;
+        } else {
+          throw new IllegalStateException();
+        }
+        expectedModCount = modCount;
+      }
+    };
+  }
+
+  /**
+   * Remove the person at slot i.
+   * @param i heap slot
+   * @return the person moved from the end of the heap to a slot before i, null if the
+   *         moved person stayed at i or below
+   */
+  private code_swarm.PersonNode removeAt(int i) {
+    code_swarm.PersonNode removed = heap[i];
+    removed.rankIndex = -1;
+    removed.isMostActive = false;
+    modCount++;
+    topDirty = true;
+    size--;
+    code_swarm.PersonNode moved = heap[size];
+    heap[size] = null;
+    if (i == size) {
+      return null;
+    }
+    place(moved, i);
+    siftDown(i);
+    if (moved.rankIndex == i) {
+      siftUp(i);
+      if (moved.rankIndex != i) {
+        return moved;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return true if a ranks before b
+   */
+  private static boolean before(code_swarm.PersonNode a, code_swarm.PersonNode b) {
+    if (a.changeWords != b.changeWords) {
+      return a.changeWords > b.changeWords;
+    }
+    return a.id < b.id;
+  }
+
+  private void place(code_swarm.PersonNode p, int i) {
+    heap[i] = p;
+    p.rankIndex = i;
+  }
+
+  private void siftUp(int i) {
+    code_swarm.PersonNode p = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (!before(p, heap[parent])) {
+        break;
+      }
+      place(heap[parent], i);
+      i = parent;
+    }
+    place(p, i);
+  }
+
+  private void siftDown(int i) {
+    code_swarm.PersonNode p = heap[i];
+    int half = size / 2;
+    while (i < half) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && before(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!before(heap[child], p)) {
+        break;
+      }
+      place(heap[child], i);
+      i = child;
+    }
+    place(p, i);
+  }
+}
@@ -0,0 +1,65 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @brief Measure the heap allocated by a thread between two points of the code
+ *
+ * Relies on the HotSpot extension of ThreadMXBean, getLastBytes() returns -1 on JVMs that
+ * do not provide it.
+ */
+class AllocationCounter {
+
+  private com.sun.management.ThreadMXBean threadBean = null;
+  private long startBytes = 0;
+  private long lastBytes = -1;
+
+  AllocationCounter() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+      if (sunBean.isThreadAllocatedMemorySupported()) {
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        threadBean = sunBean;
+      }
+    }
+  }
+
+  /**
+   * Start counting allocations of the current thread.
+   */
+  public void start() {
+    if (threadBean != null) {
+      startBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+  }
+
+  /**
+   * Stop counting, must be called from the thread which called start().
+   */
+  public void stop() {
+    if (threadBean != null) {
+      lastBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+    }
+  }
+
+  /**
+   * @return bytes allocated between the last start() and stop(), -1 if not supported
+   */
+  public long getLastBytes() {
+    return lastBytes;
+  }
+
+  /**
+   * @return number of garbage collections since the JVM started, all collectors together
+   */
+  public static long getCollectionCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc.getCollectionCount() > 0) {
+        count += gc.getCollectionCount();
+      }
+    }
+    return count;
+  }
+}
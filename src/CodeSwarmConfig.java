@@ -39,6 +39,8 @@ public class CodeSwarmConfig
   public static final String MAX_THREADS_KEY = "MaxThreads";
   /** The input file */
   public static final String INPUT_FILE_KEY = "InputFile";
+  /** Format of the input file, "xml" or "binary", guessed from the InputFile extension if unset */
+  public static final String INPUT_FORMAT_KEY = "InputFormat";
   /** The amount of time between frames */
   public static final String MSEC_PER_FRAME_KEY = "MillisecondsPerFrame";
   /** The number of frames per day.  Used to calculate time between frames. Optional. */
@@ -63,6 +65,41 @@ public class CodeSwarmConfig
   public static final String COLOR_ASSIGN_KEY  =  "ColorAssign";
   /** Location to save snapshots. TakeSnapshots must be true to use */
   public static final String SNAPSHOT_LOCATION_KEY = "SnapshotLocation";
+  /** Number of threads encoding snapshots */
+  public static final String SNAPSHOT_ENCODERS_KEY = "SnapshotEncoders";
+  /** Number of frames waiting to be saved before drawing waits */
+  public static final String SNAPSHOT_QUEUE_SIZE_KEY = "SnapshotQueueSize";
+  /** File receiving the frames as uncompressed video, "-" for stdout */
+  public static final String VIDEO_OUTPUT_KEY = "VideoOutput";
+  /** Format of the video output, "y4m" or "rgb", rgb for a .rgb VideoOutput and y4m otherwise if unset */
+  public static final String VIDEO_FORMAT_KEY = "VideoFormat";
+  /** Simulation snapshot file, for resuming a render, a run of '#' is replaced by the frame
+   *  number */
+  public static final String CHECKPOINT_LOCATION_KEY = "CheckpointLocation";
+  /** Number of frames between two simulation snapshots, 0 for none */
+  public static final String CHECKPOINT_INTERVAL_KEY = "CheckpointInterval";
+  /** Boolean value, resume from the simulation snapshot if there is one */
+  public static final String RESUME_KEY = "Resume";
+  /** Stop after this frame, 0 or unset for the end of the history */
+  public static final String LAST_FRAME_KEY = "LastFrame";
+  /** First frame drawn, the ones before are only simulated */
+  public static final String START_FRAME_KEY = "StartFrame";
+  /** yyyy-MM-dd date of the first frame drawn, the ones before are only simulated */
+  public static final String START_DATE_KEY = "StartDate";
+  /** Relax the forces every n frames only while fast-forwarding to StartFrame or StartDate */
+  public static final String FAST_FORWARD_RELAX_INTERVAL_KEY = "FastForwardRelaxInterval";
+  /** Number of worker processes of DistributedRender */
+  public static final String WORKERS_KEY = "Workers";
+  /** Number of frames rendered by a DistributedRender worker in one go */
+  public static final String SEGMENT_FRAMES_KEY = "SegmentFrames";
+  /** Simulation snapshots at the segment starts, a run of '#' for the frame number */
+  public static final String SEGMENT_LOCATION_KEY = "SegmentLocation";
+  /** Seconds a DistributedRender worker may go without saving a frame before it is killed */
+  public static final String WORKER_TIMEOUT_KEY = "WorkerTimeout";
+  /** CSV file receiving the time of every phase of every frame, in nanoseconds */
+  public static final String PROFILE_LOG_KEY = "ProfileLog";
+  /** Seed of the random streams, the same seed renders the same frames */
+  public static final String RANDOM_SEED_KEY = "RandomSeed";
   /** Length of edges */
   public static final String EDGE_LENGTH_KEY = "EdgeLength";
   /** Path to sprite file for nodes */
@@ -93,6 +130,8 @@ public class CodeSwarmConfig
   public static final String USE_OPEN_GL = "UseOpenGL";
   /** Percentage of life to highlight */
   public static final String HIGHLIGHT_PCT_KEY = "HighlightPct";
+  /** Number of most active people to highlight */
+  public static final String MOST_ACTIVE_COUNT_KEY = "MostActiveCount";
   /** Boolean value, controls showing the Legend */
   public static final String SHOW_LEGEND = "ShowLegend";
   /** Boolean value, controls showing the Histogram */
@@ -122,6 +161,8 @@ public class CodeSwarmConfig
   /** Controls where the config files are for the Physical Engine */
   public static final String PHYSICS_ENGINE_CONF_DIR = "PhysicsEngineConfigDir";
   public static final String IS_INPUT_SORTED_KEY = "IsInputSorted";
+  /** Number of events sorted in memory at once when the input is not sorted */
+  public static final String SORT_RUN_SIZE_KEY = "SortRunSize";
   /** Default regex and rgb values used to match anything not caught in the config file */
   public static String DEFAULT_COLOR_ASSIGN = "\"Misc\",\".*\",128,128,128,128,128,128";
 
@@ -181,6 +222,24 @@ public class CodeSwarmConfig
   public void setInputFile(String filePath){
     p.setProperty(INPUT_FILE_KEY, filePath);
   }
+
+  /**
+   * Override properties of the config file with command line arguments
+   * of the form Key=Value, e.g. Resume=true.
+   * @param args command line arguments
+   * @param from index of the first argument to read
+   * @throws IllegalArgumentException if an argument is not of the form Key=Value
+   */
+  public void setOverrides(String [] args, int from)
+  {
+    for (int i = from; i < args.length; i++)
+    {
+      int eq = args[i].indexOf('=');
+      if (eq <= 0)
+        throw new IllegalArgumentException("Key=Value expected instead of '" + args[i] + "'");
+      p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+    }
+  }
   /**
    *
    * @param key
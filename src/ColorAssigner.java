@@ -25,16 +25,33 @@ class ColorAssigner {
 	ArrayList<ColorTest> tests;
 	//int defaultColor = PApplet.color(128, 128, 128);
 	int defaultColor = Color.gray.getRGB();
+	SimulationRandom random;
 
-	public ColorAssigner()
+	/** Number of rules indexed below, they are indexed again when rules were added */
+	private int indexed = -1;
+	/** First rule of each EQUALS literal */
+	private HashMap<String, Integer> equalsRules;
+	private LiteralTrie prefixRules;
+	private LiteralTrie suffixRules;
+	private LiteralTrie containsRules;
+	private int anyRule;
+	/** REGEX rules, in order */
+	private int[] regexRules;
+	private int regexCount;
+
+	/**
+	 * @param random stream picking the color of a node between the two colors of its rule
+	 */
+	public ColorAssigner( SimulationRandom random )
 	{
 		tests = new ArrayList<ColorTest>();
+		this.random = random;
 	}
 
 	public void addRule( String label, String expr, int c1, int c2 )
 	{
 		ColorTest t = new ColorTest();
-		t.expr = java.util.regex.Pattern.compile( expr );
+		t.setExpr( expr );
 		t.label = label;
 		t.c1 = c1;
 		t.c2 = c2;
@@ -46,15 +63,89 @@ class ColorAssigner {
 		tests.add( t );
 	}
 
+	/**
+	 * The first rule the name passes gives the color. Rules whose regex is a literal with .*
+	 * around it skip the regex engine (see ColorTest.setExpr()), and are looked up all at once
+	 * by kind: a hash of the EQUALS literals, and a trie for each of the PREFIX, SUFFIX and
+	 * CONTAINS kinds. Only the REGEX rules before the first literal match are then tried.
+	 * @param s name of the file
+	 * @return color of the file
+	 */
 	public int getColor( String s )
 	{
-		for (ColorTest t : tests)
+		if (indexed != tests.size())
+			index();
+
+		int first = LiteralTrie.NONE;
+		if (ColorTest.isSingleLine( s ))
 		{
-			if (t.passes(s))
-				return t.assign();
+			Integer equal = equalsRules.get( s );
+			if (equal != null)
+				first = equal.intValue();
+			first = Math.min( first, anyRule );
+			first = Math.min( first, prefixRules.firstPrefix( s ) );
+			first = Math.min( first, suffixRules.firstPrefix( s ) );
+			first = Math.min( first, containsRules.firstOccurrence( s ) );
+			for (int k = 0; k < regexCount && regexRules[k] < first; k++)
+			{
+				if (tests.get( regexRules[k] ).passes( s, true ))
+					first = regexRules[k];
+			}
+		}
+		else
+		{
+			// the . of .* does not match line terminators, the rules fall back to their regex
+			for (int i = 0; i < tests.size() && first == LiteralTrie.NONE; i++)
+			{
+				if (tests.get( i ).passes( s, false ))
+					first = i;
+			}
 		}
 
-		return defaultColor;
+		if (first == LiteralTrie.NONE)
+			return defaultColor;
+		return tests.get( first ).assign( random.nextFloat() );
+	}
+
+	/**
+	 * Sort the rules by kind for getColor().
+	 */
+	private void index()
+	{
+		equalsRules = new HashMap<String, Integer>();
+		prefixRules = new LiteralTrie( false );
+		suffixRules = new LiteralTrie( true );
+		containsRules = new LiteralTrie( false );
+		anyRule = LiteralTrie.NONE;
+		regexRules = new int[tests.size()];
+		regexCount = 0;
+		for (int i = 0; i < tests.size(); i++)
+		{
+			ColorTest t = tests.get( i );
+			switch (t.kind)
+			{
+			case ColorTest.EQUALS:
+				if (!equalsRules.containsKey( t.literal ))
+					equalsRules.put( t.literal, Integer.valueOf( i ) );
+				break;
+			case ColorTest.ANY:
+				anyRule = Math.min( anyRule, i );
+				break;
+			case ColorTest.PREFIX:
+				prefixRules.add( t.literal, i );
+				break;
+			case ColorTest.SUFFIX:
+				suffixRules.add( t.literal, i );
+				break;
+			case ColorTest.CONTAINS:
+				containsRules.add( t.literal, i );
+				break;
+			default:
+				regexRules[regexCount++] = i;
+			}
+		}
+		containsRules.link();
+		indexed = tests.size();
 	}
 }
 
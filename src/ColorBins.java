@@ -18,52 +18,121 @@
  */
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * @brief Definition of the colored histogram elements
+ *
+ * Counts the files of each color touched in a frame. The counts live in a small open
+ * addressing table of ints, a free slot having a count of 0, and the colors seen are
+ * appended to keys: counting boxes nothing, and clear() readies the bins for another frame
+ * without allocating, so that ColorHistory can reuse them.
  */
 class ColorBins
 {
-  // The color is the key, and the count is the value
-  Map<Integer, Integer> colorMap;
+  /** Color of each slot of the table */
+  private int [] slotColors;
+  /** Count of each slot of the table, 0 for a free slot */
+  private int [] slotCounts;
   int totalCount;
+  /** Colors seen, in increasing order once sorted */
   int [] keys;
+  /** Count of each color of keys, filled by sort() */
+  int [] counts;
   int keyCount;
 
   ColorBins()
   {
-    colorMap = new HashMap<Integer, Integer>();
+    slotColors = new int[32];
+    slotCounts = new int[32];
+    keys = new int[16];
+    counts = new int[16];
     totalCount = 0;
     keyCount = 0;
   }
 
   public void add( int c )
   {
-    if (colorMap.containsKey(c)) {
-       int v = colorMap.get(c);
-       colorMap.put(c, v + 1);
-    }
-    else {
-       colorMap.put(c, 1);
+    add(c, 1);
+  }
+
+  /**
+   * @param c color
+   * @param n count to add, more than 0
+   */
+  public void add( int c, int n )
+  {
+    int i = slot(c);
+    if (slotCounts[i] == 0) {
+      if ((keyCount + 1) * 2 > slotColors.length) {
+        grow();
+        i = slot(c);
+      }
+      slotColors[i] = c;
+      keys[keyCount++] = c;
     }
+    slotCounts[i] += n;
+    totalCount += n;
+  }
 
-    totalCount++;
+  /**
+   * @return count of a color
+   */
+  public int getCount( int c )
+  {
+    return slotCounts[slot(c)];
   }
 
+  /**
+   * Sort the colors seen into keys, with their counts into counts.
+   */
+  public void sort()
+  {
+    Arrays.sort(keys, 0, keyCount);
+    for (int k = 0; k < keyCount; k++) {
+      counts[k] = slotCounts[slot(keys[k])];
+    }
+  }
 
+  /**
+   * Forget every count, keeping the memory.
+   */
+  public void clear()
+  {
+    if (keyCount > 0) {
+      Arrays.fill(slotCounts, 0);
+    }
+    totalCount = 0;
+    keyCount = 0;
+  }
 
-  public void sort()
+  /**
+   * @return slot of the color, or the free slot where it goes
+   */
+  private int slot( int c )
   {
-    keyCount = colorMap.size();
-    keys = new int[keyCount];
-    int i = 0;
-    for (Integer k : colorMap.keySet()) {
-       keys[i++] = k;
+    int mask = slotColors.length - 1;
+    int h = c * 0x9E3779B9;
+    int i = (h ^ (h >>> 16)) & mask;
+    while (slotCounts[i] != 0 && slotColors[i] != c) {
+      i = (i + 1) & mask;
     }
+    return i;
+  }
 
-    Arrays.sort(keys);
+  private void grow()
+  {
+    int[] oldColors = slotColors;
+    int[] oldCounts = slotCounts;
+    slotColors = new int[oldColors.length * 2];
+    slotCounts = new int[oldCounts.length * 2];
+    for (int j = 0; j < oldColors.length; j++) {
+      if (oldCounts[j] != 0) {
+        int i = slot(oldColors[j]);
+        slotColors[i] = oldColors[j];
+        slotCounts[i] = oldCounts[j];
+      }
+    }
+    keys = Arrays.copyOf(keys, slotColors.length / 2);
+    counts = new int[keys.length];
   }
 }
-
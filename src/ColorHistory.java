@@ -0,0 +1,55 @@
+/**
+ * @brief ColorBins of the last frames, for the histogram, reused from frame to frame
+ *
+ * A circular buffer of ColorBins: next() hands out the bins of the oldest frame, cleared,
+ * once the capacity is reached, so that a frame allocates no new bins.
+ */
+class ColorHistory {
+
+  private final ColorBins[] bins;
+  /** Index of the oldest bins */
+  private int start = 0;
+  private int size = 0;
+
+  /**
+   * @param capacity number of frames kept
+   */
+  ColorHistory(int capacity) {
+    bins = new ColorBins[Math.max(1, capacity)];
+  }
+
+  /**
+   * Append the bins of a new frame, dropping the oldest frame if full.
+   * @return empty bins to fill
+   */
+  public ColorBins next() {
+    int slot;
+    if (size < bins.length) {
+      slot = (start + size++) % bins.length;
+    } else {
+      slot = start;
+      start = (start + 1) % bins.length;
+    }
+    if (bins[slot] == null) {
+      bins[slot] = new ColorBins();
+    } else {
+      bins[slot].clear();
+    }
+    return bins[slot];
+  }
+
+  /**
+   * @param i index between 0 (oldest frame) and size() - 1 (newest frame)
+   * @return bins of the frame
+   */
+  public ColorBins get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    return bins[(start + i) % bins.length];
+  }
+
+  public int size() {
+    return size;
+  }
+}
@@ -25,19 +25,129 @@ import processing.core.PConstants;
 
 class ColorTest
 {
+	/** The regex is the general case, the other kinds test a literal without it */
+	static final int REGEX = 0;
+	/** .* */
+	static final int ANY = 1;
+	/** literal */
+	static final int EQUALS = 2;
+	/** literal.* */
+	static final int PREFIX = 3;
+	/** .*literal */
+	static final int SUFFIX = 4;
+	/** .*literal.* */
+	static final int CONTAINS = 5;
+
 	Pattern expr;
 	String label;
 	int c1, c2;
+	int kind = REGEX;
+	String literal;
+
+	/**
+	 * Compile the regex of the rule, and look for a literal fast path.
+	 * @param regex regular expression the whole name must match
+	 */
+	public void setExpr( String regex )
+	{
+		expr = Pattern.compile( regex );
+		kind = REGEX;
+		literal = null;
+
+		// the regex must be an optional .*, literal characters, an optional .*
+		boolean leading = regex.startsWith( ".*" );
+		boolean trailing = false;
+		StringBuilder sb = new StringBuilder();
+		for (int i = leading ? 2 : 0; i < regex.length(); i++)
+		{
+			char c = regex.charAt( i );
+			if (c == '.' && i + 2 == regex.length() && regex.charAt( i + 1 ) == '*')
+			{
+				trailing = true;
+				break;
+			}
+			if (c == '\\' && i + 1 < regex.length()
+					&& !Character.isLetterOrDigit( regex.charAt( i + 1 ) ))
+			{
+				// escaped metacharacter
+				c = regex.charAt( ++i );
+			}
+			else if ("\\^$.|?*+()[]{}".indexOf( c ) >= 0)
+			{
+				return;
+			}
+			sb.append( c );
+		}
+		literal = sb.toString();
+		if (leading && trailing)
+			kind = literal.length() == 0 ? ANY : CONTAINS;
+		else if (leading)
+			kind = literal.length() == 0 ? ANY : SUFFIX;
+		else if (trailing)
+			kind = literal.length() == 0 ? ANY : PREFIX;
+		else
+			kind = EQUALS;
+	}
 
 	public boolean passes( String s )
 	{
+		return passes( s, isSingleLine( s ) );
+	}
+
+	/**
+	 * @param s name to test
+	 * @param singleLine isSingleLine( s ), computed once for all the rules
+	 * @return true if the name matches the regex of the rule
+	 */
+	public boolean passes( String s, boolean singleLine )
+	{
+		switch (kind)
+		{
+		case EQUALS:
+			return s.equals( literal );
+		case REGEX:
+			break;
+		default:
+			// the . of .* does not match line terminators
+			if (!singleLine)
+				break;
+			switch (kind)
+			{
+			case ANY:
+				return true;
+			case PREFIX:
+				return s.startsWith( literal );
+			case SUFFIX:
+				return s.endsWith( literal );
+			default:
+				return s.indexOf( literal ) >= 0;
+			}
+		}
 		Matcher m = expr.matcher(s);
 		return m.matches();
 	}
 
-	public int assign()
+	/**
+	 * @return true if the name has no line terminator, which . would not match
+	 */
+	static boolean isSingleLine( String s )
+	{
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt( i );
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param amount position between the two colors of the rule, from 0 to 1
+	 * @return color of the rule at that position
+	 */
+	public int assign( float amount )
 	{
-		return PApplet.lerpColor( c1, c2, (float)Math.random(), PConstants.RGB );
+		return PApplet.lerpColor( c1, c2, amount, PConstants.RGB );
 	}
 
 	public void loadProperty( String value )
@@ -51,9 +161,9 @@ class ColorTest
 		tokens = firstpart.split( "\"" );
         label = tokens[0];
 		if (tokens.length == 3) {
-          expr = Pattern.compile( tokens[2] );
+          setExpr( tokens[2] );
 		} else {
-          expr = Pattern.compile( tokens[0] );
+          setExpr( tokens[0] );
 		}
 		// then the comma delimited colors
 		String rest = value.substring( lastQ + 1 );
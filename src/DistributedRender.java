@@ -0,0 +1,354 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @brief Renders one history with several worker processes, each drawing a range of frames
+ *
+ * The render goes in three steps:
+ * <ol>
+ * <li>The simulation runs once in this process without drawing anything, and saves a
+ * snapshot to SegmentLocation every SegmentFrames frames.</li>
+ * <li>Worker JVMs render the segments, at most Workers of them at a time. A worker resumes
+ * from the snapshot at the start of its segment, stops at its end with LastFrame, and saves
+ * its frames to the shared SnapshotLocation.</li>
+ * <li>Every frame file from 1 to the end of the history is checked to be there.</li>
+ * </ol>
+ * With the same RandomSeed, a resumed render draws the same frames as a render from the
+ * start, so the segments join seamlessly. When the config has no seed, one is picked here
+ * and passed to every worker.
+ *
+ * A worker that exits with an error fails its segment. So does a worker that saves no frame
+ * for WorkerTimeout seconds: it is killed, its segment reported, and the other ones go on.
+ *
+ * Workers are HeadlessRender processes started with the JVM options of this one. A worker
+ * only needs the config file, its snapshot and SnapshotLocation: with a shared file system, a
+ * segment may as well be rendered on another machine with the printed command.
+ * <pre>
+ *   java --add-opens java.desktop/java.awt=ALL-UNNAMED DistributedRender my.config Workers=4
+ * </pre>
+ */
+public class DistributedRender {
+
+  /**
+   * Frames from first to last, resumed from snapshot, null for the start of the history.
+   */
+  private static class Segment {
+    int first;
+    int last;
+    String snapshot;
+  }
+
+  /** Period of the checks on the workers, in milliseconds */
+  private static final long WATCHDOG_PERIOD = 250;
+
+  /** Workers still running, killed if the coordinator is interrupted */
+  private static final List<Process> running = new ArrayList<Process>();
+
+  /**
+   * @param args : path to the config file, optionally followed by Key=Value settings
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: java --add-opens java.desktop/java.awt=ALL-UNNAMED "
+          + "DistributedRender <configfile> [Key=Value...]");
+      System.exit(1);
+    }
+
+    CodeSwarmConfig config;
+    try {
+      config = new CodeSwarmConfig(args[0]);
+      config.setOverrides(args, 1);
+    } catch (IOException e) {
+      System.err.println("Failed due to exception: " + e.getMessage());
+      System.exit(1);
+      return;
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    String frames = config.getStringProperty(CodeSwarmConfig.SNAPSHOT_LOCATION_KEY);
+    if (!config.getBooleanProperty(CodeSwarmConfig.TAKE_SNAPSHOTS_KEY, false)
+        || frames.indexOf('#') < 0) {
+      System.err.println("Workers save their frames: set TakeSnapshots=true, and a run of '#' "
+          + "for the frame number in SnapshotLocation");
+      System.exit(1);
+    }
+    String video = config.getStringProperty(CodeSwarmConfig.VIDEO_OUTPUT_KEY);
+    if (video != null && video.length() > 0) {
+      System.err.println("VideoOutput cannot be split between workers, encode the frames once "
+          + "they are all saved");
+      System.exit(1);
+    }
+    int workers = config.getIntProperty(CodeSwarmConfig.WORKERS_KEY,
+        Runtime.getRuntime().availableProcessors());
+    int segmentFrames =
+        Math.max(1, config.getIntProperty(CodeSwarmConfig.SEGMENT_FRAMES_KEY, 500));
+    String segments = config.getStringProperty(CodeSwarmConfig.SEGMENT_LOCATION_KEY,
+        "checkpoints/segment-#####.ckpt");
+    if (segments.indexOf('#') < 0) {
+      System.err.println("SegmentLocation needs a run of '#' for the frame number");
+      System.exit(1);
+    }
+    int timeout = config.getIntProperty(CodeSwarmConfig.WORKER_TIMEOUT_KEY, 600);
+    String seed = config.getStringProperty(CodeSwarmConfig.RANDOM_SEED_KEY);
+    if (seed == null) {
+      seed = Long.toString(System.nanoTime());
+    }
+
+    // Read before simulate() overrides it
+    String profileLog = config.getStringProperty(CodeSwarmConfig.PROFILE_LOG_KEY);
+
+    int frameCount = simulate(config, seed, segmentFrames, segments);
+
+    List<Segment> todo = new ArrayList<Segment>();
+    for (int first = 1; first <= frameCount; first += segmentFrames) {
+      Segment s = new Segment();
+      s.first = first;
+      s.last = Math.min(first + segmentFrames - 1, frameCount);
+      s.snapshot = first == 1 ? null : FrameExporter.fileName(segments, first - 1);
+      todo.add(s);
+    }
+    System.out.println(todo.size() + " segments of " + segmentFrames + " frames, " + workers
+        + " workers");
+
+    boolean failed = !renderSegments(todo, workers, args, seed, frames, timeout, profileLog);
+    if (!verify(frames, frameCount)) {
+      failed = true;
+    }
+    System.exit(failed ? 1 : 0);
+  }
+
+  /**
+   * Run the whole simulation without drawing, saving a snapshot at the end of every segment.
+   * @return number of the last frame of the history
+   */
+  private static int simulate(CodeSwarmConfig config, String seed, int segmentFrames,
+      String segments) {
+    config.setOverrides(new String[] {
+        CodeSwarmConfig.TAKE_SNAPSHOTS_KEY + "=false",
+        CodeSwarmConfig.RANDOM_SEED_KEY + "=" + seed,
+        CodeSwarmConfig.CHECKPOINT_INTERVAL_KEY + "=" + segmentFrames,
+        CodeSwarmConfig.CHECKPOINT_LOCATION_KEY + "=" + segments,
+        CodeSwarmConfig.RESUME_KEY + "=false",
+        CodeSwarmConfig.START_FRAME_KEY + "=0",
+        CodeSwarmConfig.START_DATE_KEY + "=",
+        CodeSwarmConfig.LAST_FRAME_KEY + "=0",
+        CodeSwarmConfig.PROFILE_LOG_KEY + "="}, 0);
+
+    code_swarm sketch;
+    try {
+      // code_swarm must not be loaded before createSketch() sets up AWT
+      sketch = HeadlessRender.createSketch();
+      code_swarm.cfg = config;
+    } catch (Exception e) {
+      System.err.println("Could not set up offscreen rendering: " + e);
+      System.err.println("Run java with --add-opens java.desktop/java.awt=ALL-UNNAMED");
+      System.exit(1);
+      return 0;
+    }
+    sketch.simulateOnly = true;
+
+    long start = System.nanoTime();
+    try {
+      sketch.init();
+      while (!sketch.finished) {
+        sketch.handleDisplay();
+      }
+    } catch (Exception e) {
+      System.err.println("Simulation failed at frame " + sketch.frameCount + ":");
+      e.printStackTrace();
+      System.exit(1);
+      return 0;
+    }
+    // frameCount has moved past the last frame once it is drawn
+    int frameCount = sketch.frameCount - 1;
+    System.out.println("Simulated " + frameCount + " frames in "
+        + String.format("%.1f", (System.nanoTime() - start) / 1e9) + " s");
+    return frameCount;
+  }
+
+  /**
+   * Render the segments with at most workers processes at a time.
+   * @param frames SnapshotLocation
+   * @param timeout seconds a worker may go without saving a frame, 0 for no limit
+   * @param profileLog ProfileLog, null for none
+   * @return true if every worker succeeded
+   */
+  private static boolean renderSegments(List<Segment> todo, int workers, String[] args,
+      String seed, final String frames, final int timeout, final String profileLog) {
+    final List<String> jvm = new ArrayList<String>();
+    jvm.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    jvm.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+    jvm.add("-cp");
+    jvm.add(System.getProperty("java.class.path"));
+    jvm.add("HeadlessRender");
+    jvm.addAll(Arrays.asList(args));
+    jvm.add(CodeSwarmConfig.RANDOM_SEED_KEY + "=" + seed);
+    jvm.add(CodeSwarmConfig.CHECKPOINT_INTERVAL_KEY + "=0");
+    jvm.add(CodeSwarmConfig.START_FRAME_KEY + "=0");
+    jvm.add(CodeSwarmConfig.START_DATE_KEY + "=");
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      public void run() {
+        synchronized (running) {
+          for (Process p : running) {
+            p.destroy();
+          }
+        }
+      }
+    });
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers));
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (final Segment s : todo) {
+      results.add(pool.submit(new Callable<Integer>() {
+        public Integer call() throws Exception {
+          return renderSegment(jvm, s, frames, timeout, profileLog);
+        }
+      }));
+    }
+    pool.shutdown();
+
+    boolean ok = true;
+    for (int i = 0; i < todo.size(); i++) {
+      Segment s = todo.get(i);
+      try {
+        int exitValue = results.get(i).get();
+        if (exitValue != 0) {
+          System.err.println("Worker of frames " + s.first + "-" + s.last + " failed, exit value "
+              + exitValue);
+          ok = false;
+        }
+      } catch (ExecutionException e) {
+        System.err.println("Could not run the worker of frames " + s.first + "-" + s.last + ": "
+            + e.getCause());
+        ok = false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+   * Run one worker and wait for it, killing it if it stops saving frames.
+   * @param frames SnapshotLocation
+   * @param timeout seconds the worker may go without saving a frame, 0 for no limit
+   * @param profileLog ProfileLog, null for none
+   * @return exit value of the worker
+   */
+  private static int renderSegment(List<String> jvm, Segment s, String frames, int timeout,
+      String profileLog) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>(jvm);
+    if (s.snapshot != null) {
+      command.add(CodeSwarmConfig.RESUME_KEY + "=true");
+      command.add(CodeSwarmConfig.CHECKPOINT_LOCATION_KEY + "=" + s.snapshot);
+    } else {
+      command.add(CodeSwarmConfig.RESUME_KEY + "=false");
+    }
+    command.add(CodeSwarmConfig.LAST_FRAME_KEY + "=" + s.last);
+    if (profileLog != null && profileLog.length() > 0) {
+      command.add(CodeSwarmConfig.PROFILE_LOG_KEY + "=" + segmentFile(profileLog, s.first));
+    }
+
+    StringBuilder line = new StringBuilder();
+    for (String arg : command) {
+      line.append(arg.indexOf(' ') < 0 ? arg : "'" + arg + "'").append(' ');
+    }
+    System.out.println("Frames " + s.first + "-" + s.last + ": " + line.toString().trim());
+
+    // Frame files older than the worker are left over from a previous render
+    long startMillis = System.currentTimeMillis() - 2000;
+    Process p = new ProcessBuilder(command).inheritIO().start();
+    synchronized (running) {
+      running.add(p);
+    }
+    try {
+      int next = s.first;
+      long lastProgress = System.nanoTime();
+      while (true) {
+        try {
+          return p.exitValue();
+        } catch (IllegalThreadStateException e) {
+          // still running
+        }
+        while (next <= s.last
+            && new File(FrameExporter.fileName(frames, next)).lastModified() >= startMillis) {
+          next++;
+          lastProgress = System.nanoTime();
+        }
+        if (timeout > 0 && System.nanoTime() - lastProgress > timeout * 1000000000L) {
+          System.err.println("Worker of frames " + s.first + "-" + s.last + " saved no frame for "
+              + timeout + " s after frame " + (next - 1) + ", killing it");
+          p.destroy();
+          return p.waitFor();
+        }
+        Thread.sleep(WATCHDOG_PERIOD);
+      }
+    } finally {
+      synchronized (running) {
+        running.remove(p);
+      }
+    }
+  }
+
+  /**
+   * @param pattern file name shared by the workers
+   * @param first first frame of the segment
+   * @return file name of the worker of the segment: the frame number goes into the run of '#'
+   *         of the pattern, or before its extension if it has none
+   */
+  static String segmentFile(String pattern, int first) {
+    if (pattern.indexOf('#') >= 0) {
+      return FrameExporter.fileName(pattern, first);
+    }
+    int dot = pattern.lastIndexOf('.');
+    if (dot <= pattern.lastIndexOf(File.separatorChar) || dot <= pattern.lastIndexOf('/')) {
+      dot = pattern.length();
+    }
+    return pattern.substring(0, dot) + "-" + FrameExporter.fileName("#####", first)
+        + pattern.substring(dot);
+  }
+
+  /**
+   * Check that every frame file of the history is there.
+   * @return true if none is missing
+   */
+  private static boolean verify(String frames, int frameCount) {
+    StringBuilder missing = new StringBuilder();
+    int missingCount = 0;
+    int gapStart = 0;
+    for (int frame = 1; frame <= frameCount + 1; frame++) {
+      boolean there = frame > frameCount
+          || new File(FrameExporter.fileName(frames, frame)).length() > 0;
+      if (!there && gapStart == 0) {
+        gapStart = frame;
+      } else if (there && gapStart != 0) {
+        missing.append(' ').append(gapStart);
+        if (frame - 1 > gapStart) {
+          missing.append('-').append(frame - 1);
+        }
+        missingCount += frame - gapStart;
+        gapStart = 0;
+      }
+    }
+    if (missingCount > 0) {
+      System.err.println(missingCount + " of " + frameCount + " frames missing:" + missing);
+      return false;
+    }
+    System.out.println("Frames 1-" + frameCount + " complete in " + frames);
+    return true;
+  }
+}
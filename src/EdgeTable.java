@@ -0,0 +1,157 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @brief Every edge ever created, keyed by the ids of its file and person nodes
+ *
+ * Replaces the map keyed by node pairs, which allocated a Pair for every lookup and every
+ * insertion. The key is the two node ids packed into a long, the table is open addressing
+ * with linear probing over parallel arrays of keys and edge indexes: get() and put()
+ * allocate nothing, and a probe compares longs without touching the edges.
+ *
+ * Edges are stored in insertion order in a dense array, which iteration walks. Edges are
+ * never removed, a dead edge comes back to life when its file and person meet again.
+ *
+ * put() also adds the edge to the adjacency lists of both its nodes, see
+ * code_swarm.Node.getEdge().
+ */
+class EdgeTable extends AbstractCollection<code_swarm.Edge> {
+
+  private static final int EMPTY = -1;
+
+  /** Edges in insertion order */
+  private code_swarm.Edge[] edges;
+  private int size = 0;
+  /** Packed key of each slot */
+  private long[] keys;
+  /** Index in edges of each slot, EMPTY if free */
+  private int[] slots;
+
+  EdgeTable() {
+    this(1024);
+  }
+
+  /**
+   * @param capacity number of edges expected, the table grows past it
+   */
+  EdgeTable(int capacity) {
+    int tableSize = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1) * 2;
+    edges = new code_swarm.Edge[tableSize / 2];
+    keys = new long[tableSize];
+    slots = new int[tableSize];
+    Arrays.fill(slots, EMPTY);
+  }
+
+  /**
+   * @return key of the edge between two nodes
+   */
+  private static long key(code_swarm.Node from, code_swarm.Node to) {
+    return ((long) from.id << 32) | (to.id & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param from file node
+   * @param to person node
+   * @return edge between the two nodes, null if none
+   */
+  public code_swarm.Edge get(code_swarm.WikiNode from, code_swarm.PersonNode to) {
+    long key = key(from, to);
+    int mask = slots.length - 1;
+    int i = mix(key) & mask;
+    while (true) {
+      int index = slots[i];
+      if (index == EMPTY) {
+        return null;
+      }
+      if (keys[i] == key) {
+        return edges[index];
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Add an edge, and add it to the adjacency lists of its nodes.
+   * @param edge edge between two nodes without an edge yet
+   */
+  public void put(code_swarm.Edge edge) {
+    if (size == edges.length) {
+      code_swarm.Edge[] grown = new code_swarm.Edge[size * 2];
+      System.arraycopy(edges, 0, grown, 0, size);
+      edges = grown;
+    }
+    if ((size + 1) * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    insert(key(edge.nodeFrom, edge.nodeTo), size);
+    edges[size++] = edge;
+    edge.nodeFrom.addEdge(edge);
+    edge.nodeTo.addEdge(edge);
+  }
+
+  private void insert(long key, int index) {
+    int mask = slots.length - 1;
+    int i = mix(key) & mask;
+    while (slots[i] != EMPTY) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    slots[i] = index;
+  }
+
+  private void rehash(int tableSize) {
+    keys = new long[tableSize];
+    slots = new int[tableSize];
+    Arrays.fill(slots, EMPTY);
+    for (int index = 0; index < size; index++) {
+      insert(key(edges[index].nodeFrom, edges[index].nodeTo), index);
+    }
+  }
+
+  /**
+   * @param i index between 0 and size() - 1, in insertion order
+   * @return edge at index i
+   */
+  public code_swarm.Edge get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    return edges[i];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Iterator<code_swarm.Edge> iterator() {
+    return new Iterator<code_swarm.Edge>() {
+      private int next = 0;
+
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      public code_swarm.Edge next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        return edges[next++];
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Spread the key over the low bits, a murmur3 finalizer.
+   */
+  private static int mix(long key) {
+    key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+    key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return (int) (key ^ (key >>> 33));
+  }
+}
@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * @brief Streaming reader of the file_events XML format, working on raw bytes
+ *
+ * Purpose-built replacement of the SAX parser for the files produced by the repository
+ * converters:
+ * <pre>
+ *   &lt;file_events&gt;
+ *     &lt;event filename="..." date="1079558593000" author="..." weight="503"/&gt;
+ *   &lt;/file_events&gt;
+ * </pre>
+ * The input is scanned in place in a byte buffer: no DOM, no attribute maps, the date and
+ * the weight are parsed straight from the bytes, and filenames and authors go through a
+ * small cache so that the String of a name seen before is reused instead of decoded again.
+ *
+ * Elements other than event, comments, processing instructions and the DOCTYPE are skipped.
+ * The input must be UTF-8 (or ASCII), which is what the converters write. Attribute values
+ * are normalized like an XML parser does: predefined entities and character references are
+ * expanded, and tabs and line breaks become spaces.
+ */
+class EventStreamReader {
+
+  /**
+   * Receives the events read, in file order.
+   */
+  interface Handler {
+    /**
+     * @param filename filename attribute, null if missing
+     * @param date date attribute, in milliseconds since the epoch
+     * @param author author attribute, null if missing
+     * @param weight weight attribute, 1 if missing
+     * @throws IOException if the handler could not store the event, reading stops
+     * @throws InterruptedException if the handler was interrupted, reading stops
+     */
+    void event(String filename, long date, String author, int weight)
+        throws IOException, InterruptedException;
+  }
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final byte[] EVENT = bytes("event");
+  private static final byte[] FILENAME = bytes("filename");
+  private static final byte[] DATE = bytes("date");
+  private static final byte[] AUTHOR = bytes("author");
+  private static final byte[] WEIGHT = bytes("weight");
+  private static final byte[] COMMENT_END = bytes("-->");
+  private static final byte[] INSTRUCTION_END = bytes("?>");
+
+  private static final int CACHE_SIZE = 8192;
+
+  private InputStream in;
+  private byte[] buf = new byte[64 * 1024];
+  /** First byte of the token being scanned, kept when refilling */
+  private int start = 0;
+  /** End of the valid bytes of buf */
+  private int limit = 0;
+  /** Bytes dropped from the buffer so far, for error messages */
+  private long consumed = 0;
+
+  // Direct-mapped cache of decoded attribute values
+  private final byte[][] cacheKeys = new byte[CACHE_SIZE][];
+  private final String[] cacheValues = new String[CACHE_SIZE];
+
+  private int eventCount = 0;
+
+  /**
+   * @return number of events read so far
+   */
+  public int getEventCount() {
+    return eventCount;
+  }
+
+  /**
+   * Read every event of a stream. The stream is not closed.
+   * @param input stream to read
+   * @param handler receiver of the events
+   * @throws IOException on read error or malformed input
+   * @throws InterruptedException if the handler was interrupted
+   */
+  public void read(InputStream input, Handler handler) throws IOException, InterruptedException {
+    in = input;
+    start = 0;
+    limit = 0;
+    consumed = 0;
+
+    while (true) {
+      // skip text up to the next tag
+      int lt = -1;
+      while (lt < 0) {
+        for (int i = start; i < limit; i++) {
+          if (buf[i] == '<') {
+            lt = i;
+            break;
+          }
+        }
+        if (lt < 0) {
+          start = limit;
+          if (!fill()) {
+            return;
+          }
+        }
+      }
+      start = lt;
+
+      byte next = byteAt(1);
+      if (next == '!') {
+        if (byteAt(2) == '-' && byteAt(3) == '-') {
+          start += skipPast(COMMENT_END, 4);
+        } else {
+          start += skipDeclaration();
+        }
+      } else if (next == '?') {
+        start += skipPast(INSTRUCTION_END, 2);
+      } else {
+        int end = tagEnd();
+        if (next != '/' && isElement(EVENT)) {
+          readEvent(end, handler);
+        }
+        start += end + 1;
+      }
+    }
+  }
+
+  /**
+   * Parse the attributes of the event tag at start.
+   * @param end offset of the closing '&gt;' of the tag
+   */
+  private void readEvent(int end, Handler handler) throws IOException, InterruptedException {
+    String filename = null;
+    String author = null;
+    long date = 0;
+    boolean hasDate = false;
+    int weight = 1;
+
+    int tagEnd = start + end;
+    int i = start + 1 + EVENT.length;
+    while (true) {
+      while (i < tagEnd && isSpace(buf[i])) {
+        i++;
+      }
+      if (i >= tagEnd || buf[i] == '/') {
+        break;
+      }
+      int nameStart = i;
+      while (i < tagEnd && buf[i] != '=' && !isSpace(buf[i])) {
+        i++;
+      }
+      int nameEnd = i;
+      while (i < tagEnd && isSpace(buf[i])) {
+        i++;
+      }
+      if (i >= tagEnd || buf[i] != '=') {
+        throw error("'=' expected after attribute name", i);
+      }
+      i++;
+      while (i < tagEnd && isSpace(buf[i])) {
+        i++;
+      }
+      if (i >= tagEnd || (buf[i] != '"' && buf[i] != '\'')) {
+        throw error("quoted attribute value expected", i);
+      }
+      byte quote = buf[i++];
+      int valueStart = i;
+      while (buf[i] != quote) {
+        i++;
+      }
+      int valueEnd = i++;
+
+      if (equals(FILENAME, nameStart, nameEnd)) {
+        filename = string(valueStart, valueEnd);
+      } else if (equals(AUTHOR, nameStart, nameEnd)) {
+        author = string(valueStart, valueEnd);
+      } else if (equals(DATE, nameStart, nameEnd)) {
+        date = parseLong(valueStart, valueEnd);
+        hasDate = true;
+      } else if (equals(WEIGHT, nameStart, nameEnd)) {
+        long value = parseLong(valueStart, valueEnd);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+          throw error("weight out of range", valueStart);
+        }
+        weight = (int) value;
+      }
+    }
+    if (!hasDate) {
+      throw error("event without date", start);
+    }
+    eventCount++;
+    handler.event(filename, date, author, weight);
+  }
+
+  /**
+   * @return true if the tag at start is the element name
+   */
+  private boolean isElement(byte[] name) {
+    int i = start + 1;
+    if (i + name.length >= limit) {
+      return false;
+    }
+    for (int k = 0; k < name.length; k++) {
+      if (buf[i + k] != name[k]) {
+        return false;
+      }
+    }
+    byte after = buf[i + name.length];
+    return isSpace(after) || after == '/' || after == '>';
+  }
+
+  /**
+   * @return offset from start of the '&gt;' closing the tag at start, quotes aware
+   */
+  private int tagEnd() throws IOException {
+    byte quote = 0;
+    for (int off = 1; ; off++) {
+      byte c = byteAt(off);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return off;
+      }
+    }
+  }
+
+  /**
+   * Skip a &lt;!...&gt; declaration, with its internal subset if any.
+   * @return offset from start of the byte following the declaration
+   */
+  private int skipDeclaration() throws IOException {
+    int depth = 0;
+    for (int off = 2; ; off++) {
+      byte c = byteAt(off);
+      if (c == '[') {
+        depth++;
+      } else if (c == ']') {
+        depth--;
+      } else if (c == '>' && depth <= 0) {
+        return off + 1;
+      }
+    }
+  }
+
+  /**
+   * Skip up to a terminator.
+   * @param terminator bytes ending the construct
+   * @param from offset from start where to look from
+   * @return offset from start of the byte following the terminator
+   */
+  private int skipPast(byte[] terminator, int from) throws IOException {
+    for (int off = from; ; off++) {
+      int k = 0;
+      while (k < terminator.length && byteAt(off + k) == terminator[k]) {
+        k++;
+      }
+      if (k == terminator.length) {
+        return off + k;
+      }
+    }
+  }
+
+  /**
+   * @param off offset from start
+   * @return byte at start + off, reading more input if needed
+   * @throws IOException at the end of the input
+   */
+  private byte byteAt(int off) throws IOException {
+    while (start + off >= limit) {
+      if (!fill()) {
+        throw error("unexpected end of file", limit);
+      }
+    }
+    return buf[start + off];
+  }
+
+  /**
+   * Read more input, keeping the bytes from start.
+   * @return false at the end of the input
+   */
+  private boolean fill() throws IOException {
+    if (start > 0) {
+      System.arraycopy(buf, start, buf, 0, limit - start);
+      limit -= start;
+      consumed += start;
+      start = 0;
+    }
+    if (limit == buf.length) {
+      byte[] grown = new byte[buf.length * 2];
+      System.arraycopy(buf, 0, grown, 0, limit);
+      buf = grown;
+    }
+    int n = in.read(buf, limit, buf.length - limit);
+    if (n <= 0) {
+      return false;
+    }
+    limit += n;
+    return true;
+  }
+
+  private long parseLong(int from, int to) throws IOException {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (buf[i] == '-' || buf[i] == '+')) {
+      negative = buf[i] == '-';
+      i++;
+    }
+    if (i == to) {
+      throw error("number expected", from);
+    }
+    long value = 0;
+    for (; i < to; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw error("number expected", from);
+      }
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw error("number out of range", from);
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * @return decoded attribute value, from the cache when it was seen before
+   */
+  private String string(int from, int to) {
+    int length = to - from;
+    int hash = length;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + buf[i];
+    }
+    int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    byte[] key = cacheKeys[slot];
+    if (key != null && key.length == length) {
+      boolean same = true;
+      for (int k = 0; k < length && same; k++) {
+        same = key[k] == buf[from + k];
+      }
+      if (same) {
+        return cacheValues[slot];
+      }
+    }
+    key = new byte[length];
+    System.arraycopy(buf, from, key, 0, length);
+    String value = decode(from, to);
+    cacheKeys[slot] = key;
+    cacheValues[slot] = value;
+    return value;
+  }
+
+  private String decode(int from, int to) {
+    boolean plain = true;
+    for (int i = from; i < to && plain; i++) {
+      byte c = buf[i];
+      plain = c != '&' && c != '\t' && c != '\n' && c != '\r';
+    }
+    String s = new String(buf, from, to - from, UTF8);
+    if (plain) {
+      return s;
+    }
+
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\t' || c == '\n' || c == '\r') {
+        if (c == '\r' && i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+          i++;
+        }
+        sb.append(' ');
+      } else if (c == '&') {
+        int semi = s.indexOf(';', i);
+        String entity = semi < 0 ? "" : s.substring(i + 1, semi);
+        if (entity.equals("amp")) {
+          sb.append('&');
+        } else if (entity.equals("lt")) {
+          sb.append('<');
+        } else if (entity.equals("gt")) {
+          sb.append('>');
+        } else if (entity.equals("quot")) {
+          sb.append('"');
+        } else if (entity.equals("apos")) {
+          sb.append('\'');
+        } else if (entity.startsWith("#x")) {
+          sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+        } else if (entity.startsWith("#")) {
+          sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+        } else {
+          // unknown entity, keep it as is
+          sb.append(c);
+          continue;
+        }
+        i = semi;
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private boolean equals(byte[] name, int from, int to) {
+    if (to - from != name.length) {
+      return false;
+    }
+    for (int k = 0; k < name.length; k++) {
+      if (buf[from + k] != name[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private IOException error(String message, int index) {
+    return new IOException(message + " at byte " + (consumed + index));
+  }
+
+  private static boolean isSpace(byte c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(UTF8);
+  }
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * @brief Out-of-core sort of an event stream by date
+ *
+ * Events are gathered in a run of bounded size. A full run is sorted in memory and spilled
+ * to a temporary BinaryEventLog. Once the input is over, the runs are merged by date through
+ * a heap of one cursor per run and handed to the downstream handler in order, so memory use
+ * only depends on the run size, whatever the size of the history. When the whole input fits
+ * in a single run, nothing is written to disk.
+ *
+ * The sort is stable: events of the same date keep their input order.
+ *
+ * <pre>
+ *   ExternalEventSorter sorter = new ExternalEventSorter(100000, handler);
+ *   reader.read(in, sorter);
+ *   sorter.finish(); // handler receives every event, sorted
+ * </pre>
+ */
+class ExternalEventSorter implements EventStreamReader.Handler {
+
+  private final EventStreamReader.Handler downstream;
+  private final int runSize;
+
+  // The run being gathered
+  private long[] dates;
+  private String[] authors;
+  private String[] filenames;
+  private int[] weights;
+  private int[] order;
+  private int[] scratch;
+  private int count = 0;
+
+  private final ArrayList<File> runs = new ArrayList<File>();
+
+  /**
+   * @param runSize maximum number of events sorted in memory at once
+   * @param downstream receiver of the sorted events
+   */
+  ExternalEventSorter(int runSize, EventStreamReader.Handler downstream) {
+    this.runSize = Math.max(1, runSize);
+    this.downstream = downstream;
+    int capacity = Math.min(this.runSize, 4096);
+    dates = new long[capacity];
+    authors = new String[capacity];
+    filenames = new String[capacity];
+    weights = new int[capacity];
+  }
+
+  /**
+   * @return number of runs spilled to disk so far
+   */
+  public int getSpilledRuns() {
+    return runs.size();
+  }
+
+  public void event(String filename, long date, String author, int weight) throws IOException {
+    if (count == runSize) {
+      spill();
+    }
+    if (count == dates.length) {
+      grow(Math.min(runSize, count * 2));
+    }
+    dates[count] = date;
+    authors[count] = author;
+    filenames[count] = filename;
+    weights[count] = weight;
+    count++;
+  }
+
+  /**
+   * Hand every event received to the downstream handler, sorted by date, and delete the
+   * temporary files.
+   * @throws IOException on read or write error of the temporary files
+   * @throws InterruptedException if the downstream handler was interrupted
+   */
+  public void finish() throws IOException, InterruptedException {
+    try {
+      if (runs.isEmpty()) {
+        sortRun();
+        for (int k = 0; k < count; k++) {
+          int i = order[k];
+          downstream.event(filenames[i], dates[i], authors[i], weights[i]);
+        }
+        clearRun();
+        return;
+      }
+
+      if (count > 0) {
+        spill();
+      }
+      // release the run buffers before merging
+      dates = null;
+      authors = null;
+      filenames = null;
+      weights = null;
+      order = null;
+      scratch = null;
+      merge();
+    } finally {
+      for (File run : runs) {
+        run.delete();
+      }
+      runs.clear();
+    }
+  }
+
+  /**
+   * k-way merge of the spilled runs into the downstream handler.
+   */
+  private void merge() throws IOException, InterruptedException {
+    final BinaryEventLog.Cursor[] cursors = new BinaryEventLog.Cursor[runs.size()];
+    // heap of run indexes, by date of the current event then run order for stability
+    PriorityQueue<Integer> heap = new PriorityQueue<Integer>(cursors.length,
+        new Comparator<Integer>() {
+          public int compare(Integer a, Integer b) {
+            long da = cursors[a].date;
+            long db = cursors[b].date;
+            if (da != db) {
+              return da < db ? -1 : 1;
+            }
+            return a - b;
+          }
+        });
+    for (int r = 0; r < cursors.length; r++) {
+      cursors[r] = new BinaryEventLog.Cursor(runs.get(r));
+      if (cursors[r].next()) {
+        heap.add(r);
+      }
+    }
+    while (!heap.isEmpty()) {
+      Integer r = heap.poll();
+      BinaryEventLog.Cursor cursor = cursors[r];
+      downstream.event(cursor.filename, cursor.date, cursor.author, cursor.weight);
+      if (cursor.next()) {
+        heap.add(r);
+      }
+    }
+  }
+
+  /**
+   * Sort the current run and write it to a temporary file.
+   */
+  private void spill() throws IOException {
+    sortRun();
+    BinaryEventLog.Writer writer = new BinaryEventLog.Writer();
+    for (int k = 0; k < count; k++) {
+      int i = order[k];
+      writer.event(filenames[i], dates[i], authors[i], weights[i]);
+    }
+    File run = File.createTempFile("code_swarm-run", BinaryEventLog.EXTENSION);
+    run.deleteOnExit();
+    runs.add(run);
+    writer.writeTo(run);
+    clearRun();
+  }
+
+  private void clearRun() {
+    for (int i = 0; i < count; i++) {
+      authors[i] = null;
+      filenames[i] = null;
+    }
+    count = 0;
+  }
+
+  /**
+   * Stable sort of the indexes of the current run by date, into order.
+   */
+  private void sortRun() {
+    if (order == null || order.length < count) {
+      order = new int[dates.length];
+      scratch = new int[dates.length];
+    }
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    // bottom-up merge sort
+    int[] from = order;
+    int[] to = scratch;
+    for (int width = 1; width < count; width *= 2) {
+      for (int lo = 0; lo < count; lo += 2 * width) {
+        int mid = Math.min(lo + width, count);
+        int hi = Math.min(lo + 2 * width, count);
+        int a = lo;
+        int b = mid;
+        for (int k = lo; k < hi; k++) {
+          if (a < mid && (b >= hi || dates[from[a]] <= dates[from[b]])) {
+            to[k] = from[a++];
+          } else {
+            to[k] = from[b++];
+          }
+        }
+      }
+      int[] swap = from;
+      from = to;
+      to = swap;
+    }
+    if (from != order) {
+      System.arraycopy(from, 0, order, 0, count);
+    }
+  }
+
+  private void grow(int capacity) {
+    long[] d = new long[capacity];
+    System.arraycopy(dates, 0, d, 0, count);
+    dates = d;
+    String[] a = new String[capacity];
+    System.arraycopy(authors, 0, a, 0, count);
+    authors = a;
+    String[] f = new String[capacity];
+    System.arraycopy(filenames, 0, f, 0, count);
+    filenames = f;
+    int[] w = new int[capacity];
+    System.arraycopy(weights, 0, w, 0, count);
+    weights = w;
+  }
+}
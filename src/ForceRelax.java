@@ -0,0 +1,201 @@
+import java.util.Arrays;
+import java.util.Collection;
+import javax.vecmath.Vector2f;
+
+/**
+ * @brief Relax loops of the Vector2f physics engines, over the spatial grid and relax threads
+ *
+ * PhysicsEngineWiki and PhysicsEngineCircle only differ by their force functions, which they
+ * hand in as Forces: the loops visiting the node pairs through a SpatialGrid, and spreading
+ * the work over a ParallelRelax pool, are written once here.
+ *
+ * Buffers are kept from frame to frame: the node array, the edge forces and one neighbours
+ * buffer per relax thread. Results are identical to the sequential all pairs loops of the
+ * engines, whatever the thread count.
+ */
+class ForceRelax {
+
+  /**
+   * Force functions of an engine.
+   */
+  interface Forces {
+    /**
+     * @param edge the link between a person and one of its file
+     * @return force applied to the person end of the edge, before the sign of the weight
+     */
+    Vector2f alongEdge(code_swarm.Edge edge);
+
+    /**
+     * @return repulsive force of nodeB on nodeA, only reading positions
+     */
+    Vector2f betweenNodes(code_swarm.Node nodeA, code_swarm.Node nodeB);
+
+    /**
+     * Convert a force to a speed change of the node.
+     */
+    void applyToSpeed(code_swarm.Node node, Vector2f force);
+  }
+
+  private final Forces forces;
+  /** null to visit every pair */
+  private final SpatialGrid grid;
+  /** null to relax on the calling thread */
+  private final ParallelRelax parallel;
+
+  /** Neighbours buffer of the calling thread */
+  private final SpatialGrid.Neighbours neighbours = new SpatialGrid.Neighbours();
+  /** Neighbours buffer of each relax thread */
+  private final ThreadLocal<SpatialGrid.Neighbours> threadNeighbours =
+      new ThreadLocal<SpatialGrid.Neighbours>() {
+        protected SpatialGrid.Neighbours initialValue() {
+          return new SpatialGrid.Neighbours();
+        }
+      };
+
+  /** Nodes being relaxed when there is no grid, in collection order */
+  private code_swarm.Node[] bodies = new code_swarm.Node[64];
+  private Vector2f[] edgeForces = new Vector2f[64];
+
+  /**
+   * @param forces force functions of the engine
+   * @param spatialHash true to only visit the node pairs within the 100px range of repulsion
+   * @param threads relax threads, 1 for the calling thread only, 0 for all processors
+   */
+  ForceRelax(Forces forces, boolean spatialHash, int threads) {
+    this.forces = forces;
+    grid = spatialHash ? new SpatialGrid(100) : null;
+    parallel = threads != 1 ? new ParallelRelax(threads) : null;
+  }
+
+  /**
+   * @return true if the edge forces are computed by relax threads
+   */
+  public boolean isParallel() {
+    return parallel != null;
+  }
+
+  /**
+   * @return true if the repulsion goes through the grid or relax threads, false if the plain
+   *         all pairs loop of the engine does as well
+   */
+  public boolean isEnabled() {
+    return grid != null || parallel != null;
+  }
+
+  /**
+   * Apply the edge forces, computed by the relax threads.
+   *
+   * Both ends of an edge can be shared with other edges, so only the (read only) force
+   * calculation is parallel: forces are then applied on this thread, in list order, which
+   * gives the same result as the sequential loop.
+   *
+   * @param edges the edges to which the force apply (both ends)
+   */
+  public void relaxEdges(final LivingSet<code_swarm.Edge> edges) {
+    int n = edges.size();
+    if (edgeForces.length < n) {
+      edgeForces = new Vector2f[Math.max(n, edgeForces.length * 2)];
+    }
+    final Vector2f[] result = edgeForces;
+
+    parallel.forChunks(n, new ParallelRelax.Body() {
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          code_swarm.Edge edge = edges.get(i);
+          result[i] = forces.alongEdge(edge);
+          if (edge.weight < 0) {
+            result[i].negate();
+          }
+        }
+      }
+    });
+
+    for (int i = 0; i < n; i++) {
+      code_swarm.Edge edge = edges.get(i);
+      forces.applyToSpeed(edge.nodeTo, result[i]);
+      result[i].negate(); // force is inverted for the other end of the edge
+      forces.applyToSpeed(edge.nodeFrom, result[i]);
+    }
+  }
+
+  /**
+   * Apply the repulsive force between all the given nodes, using the spatial grid and/or the
+   * relax threads.
+   *
+   * With the grid only pairs from neighbouring cells are visited, in the same order as the all
+   * pairs loops: the sum is the same since the force is zero between nodes further than 100px
+   * apart.
+   *
+   * @param nodes the nodes to which the force apply
+   * @param speedScale factor applied to the speed of every node once the force is applied
+   */
+  public void relaxRepulsion(Collection<? extends code_swarm.Node> nodes,
+      final float speedScale) {
+    final int n = nodes.size();
+    if (grid != null) {
+      grid.build(nodes);
+    } else {
+      if (bodies.length < n) {
+        bodies = new code_swarm.Node[Math.max(n, bodies.length * 2)];
+      }
+      int i = 0;
+      for (code_swarm.Node node : nodes) {
+        bodies[i++] = node;
+      }
+    }
+
+    if (parallel == null) {
+      relaxRepulsion(0, n, n, speedScale, neighbours);
+    } else {
+      parallel.forChunks(n, new ParallelRelax.Body() {
+        public void run(int from, int to) {
+          relaxRepulsion(from, to, n, speedScale, threadNeighbours.get());
+        }
+      });
+    }
+
+    if (grid == null) {
+      // do not keep dead nodes reachable
+      Arrays.fill(bodies, 0, n, null);
+    }
+  }
+
+  /**
+   * Apply the repulsive force from all the other nodes to nodes from .. to - 1.
+   *
+   * Only reads positions, and only writes the speed of the nodes in range, so that disjoint
+   * ranges can be relaxed concurrently.
+   *
+   * @param from first node to relax
+   * @param to index following the last node to relax
+   * @param n number of nodes
+   * @param speedScale factor applied to the speed once the force is applied
+   * @param buffer neighbours buffer owned by the calling thread
+   */
+  private void relaxRepulsion(int from, int to, int n, float speedScale,
+      SpatialGrid.Neighbours buffer) {
+    Vector2f forceSummation = new Vector2f();
+    for (int i = from; i < to; i++) {
+      code_swarm.Node node;
+      forceSummation.set(0, 0);
+      if (grid != null) {
+        node = grid.body(i);
+        int count = grid.gatherNeighbours(i, buffer);
+        for (int k = 0; k < count; k++) {
+          forceSummation.add(forces.betweenNodes(node, buffer.get(k)));
+        }
+      } else {
+        node = bodies[i];
+        for (int j = 0; j < n; j++) {
+          if (j != i) {
+            forceSummation.add(forces.betweenNodes(node, bodies[j]));
+          }
+        }
+      }
+      forces.applyToSpeed(node, forceSummation);
+      if (speedScale != 1.0f) {
+        node.mSpeed.scale(speedScale);
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/**
+ * @brief Saves rendered frames to image files from a pool of encoder threads
+ *
+ * The render thread only copies the pixels of a frame into a free slab of a fixed pool and
+ * goes on drawing, the slab is encoded and written by one of the encoder threads. When every
+ * slab is in flight, submit() waits for one to be written: the pool size bounds the memory
+ * used and how far the encoders may lag behind.
+ *
+ * File names are built like PApplet.saveFrame() does: the run of '#' of the pattern is
+ * replaced by the zero padded frame number, e.g. frames/code_swarm-#####.png. The image
+ * format comes from the extension, anything ImageIO can write.
+ */
+class FrameExporter {
+
+  /**
+   * Pixel buffer of one frame, wrapped in the image handed to ImageIO.
+   */
+  private static class Slab {
+    final int[] pixels;
+    final BufferedImage image;
+    int frame;
+
+    Slab(int width, int height) {
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+  }
+
+  private final String pattern;
+  private final String format;
+  private final int maxFrames;
+
+  private final BlockingQueue<Slab> freeSlabs;
+  private final int slabCount;
+  private final ExecutorService encoders;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger framesWritten = new AtomicInteger();
+  private final AtomicLong lastEncodeNanos = new AtomicLong();
+  private final AtomicLong totalEncodeNanos = new AtomicLong();
+
+  /**
+   * @param pattern file name pattern, with a run of '#' for the frame number
+   * @param width width of the frames
+   * @param height height of the frames
+   * @param encoderCount number of encoder threads
+   * @param maxInFlight number of frames copied but not written yet before submit() waits
+   * @throws IllegalArgumentException if ImageIO cannot write the format of the extension
+   */
+  FrameExporter(String pattern, int width, int height, int encoderCount, int maxInFlight) {
+    this.pattern = pattern;
+    int first = pattern.indexOf('#');
+    int digits = first < 0 ? 0 : pattern.lastIndexOf('#') - first + 1;
+    int dot = pattern.lastIndexOf('.');
+    format = dot < 0 ? "png" : pattern.substring(dot + 1).toLowerCase();
+    if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+      throw new IllegalArgumentException("No image writer for format '" + format + "' of "
+          + pattern);
+    }
+    maxFrames = digits == 0 || digits > 9 ? Integer.MAX_VALUE : (int) Math.pow(10, digits);
+
+    slabCount = Math.max(1, maxInFlight);
+    freeSlabs = new ArrayBlockingQueue<Slab>(slabCount);
+    for (int i = 0; i < slabCount; i++) {
+      freeSlabs.add(new Slab(width, height));
+    }
+
+    encoders = Executors.newFixedThreadPool(Math.max(1, encoderCount), new ThreadFactory() {
+      private int count = 0;
+
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "FrameExporter-" + (++count));
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        // finish() writes the frames in flight, a render that fails must not hang in them
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * @return true if the pattern has room for the number of the frame
+   */
+  public boolean accepts(int frame) {
+    return frame < maxFrames;
+  }
+
+  /**
+   * @return file name of a frame
+   */
+  public String fileName(int frame) {
+    return fileName(pattern, frame);
+  }
+
+  /**
+   * @param pattern file name pattern, with a run of '#' for the frame number
+   * @param frame frame number
+   * @return file name of the frame, the pattern itself if it has no '#'
+   */
+  public static String fileName(String pattern, int frame) {
+    int first = pattern.indexOf('#');
+    if (first < 0) {
+      return pattern;
+    }
+    int last = pattern.lastIndexOf('#');
+    StringBuilder sb = new StringBuilder(pattern.length() + 10);
+    sb.append(pattern, 0, first);
+    String number = Integer.toString(frame);
+    for (int i = number.length(); i < last - first + 1; i++) {
+      sb.append('0');
+    }
+    return sb.append(number).append(pattern, last + 1, pattern.length()).toString();
+  }
+
+  /**
+   * Copy a frame and queue it for writing. Waits while all the slabs are in flight.
+   * @param pixels ARGB pixels of the frame, width * height of them
+   * @param frame frame number
+   * @throws InterruptedException if interrupted while waiting for a free slab
+   */
+  public void submit(int[] pixels, int frame) throws InterruptedException {
+    final Slab slab = freeSlabs.take();
+    System.arraycopy(pixels, 0, slab.pixels, 0, slab.pixels.length);
+    slab.frame = frame;
+    inFlight.incrementAndGet();
+    encoders.execute(new Runnable() {
+      public void run() {
+        try {
+          write(slab);
+        } finally {
+          inFlight.decrementAndGet();
+          freeSlabs.add(slab);
+        }
+      }
+    });
+  }
+
+  private void write(Slab slab) {
+    long start = System.nanoTime();
+    File file = new File(fileName(slab.frame)).getAbsoluteFile();
+    try {
+      File parent = file.getParentFile();
+      if (parent != null) {
+        parent.mkdirs();
+      }
+      if (!ImageIO.write(slab.image, format, file)) {
+        System.err.println("No image writer for format '" + format + "', " + file
+            + " not saved");
+        return;
+      }
+    } catch (IOException e) {
+      System.err.println("Could not save " + file + ": " + e.getMessage());
+      return;
+    }
+    long elapsed = System.nanoTime() - start;
+    lastEncodeNanos.set(elapsed);
+    totalEncodeNanos.addAndGet(elapsed);
+    framesWritten.incrementAndGet();
+  }
+
+  /**
+   * @return number of frames submitted and not written yet
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return number of frames written
+   */
+  public int getFramesWritten() {
+    return framesWritten.get();
+  }
+
+  /**
+   * @return time to encode and write the last frame, in milliseconds
+   */
+  public double getLastEncodeMillis() {
+    return lastEncodeNanos.get() / 1e6;
+  }
+
+  /**
+   * @return mean time to encode and write a frame, in milliseconds
+   */
+  public double getMeanEncodeMillis() {
+    int count = framesWritten.get();
+    return count == 0 ? 0 : totalEncodeNanos.get() / 1e6 / count;
+  }
+
+  /**
+   * Wait until every frame submitted so far is written.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitIdle() throws InterruptedException {
+    Slab[] slabs = new Slab[slabCount];
+    for (int i = 0; i < slabCount; i++) {
+      slabs[i] = freeSlabs.take();
+    }
+    for (Slab slab : slabs) {
+      freeSlabs.add(slab);
+    }
+  }
+
+  /**
+   * Write the frames in flight and stop the encoder threads.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void finish() throws InterruptedException {
+    encoders.shutdown();
+    encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+  }
+}
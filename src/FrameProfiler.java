@@ -0,0 +1,182 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * @brief Nanosecond timing of the phases of a frame, over a rolling window of frames
+ *
+ * The render thread calls startFrame(), then lap(phase) at the end of each phase: the time
+ * since the previous lap goes to that phase, so every nanosecond of the frame is counted once
+ * and a phase may be timed in several pieces. endFrame() records the times of the frame in
+ * the window, from which percentiles are computed, and appends them to the CSV log if any.
+ *
+ * A lap costs a System.nanoTime() call, cheap enough to leave the profiler always on.
+ */
+class FrameProfiler {
+
+  /** Event ingestion and histories, in update() */
+  public static final int EVENTS = 0;
+  /** PhysicsEngine.initializeFrame() */
+  public static final int INIT_FRAME = 1;
+  public static final int RELAX_EDGES = 2;
+  public static final int RELAX_NODES = 3;
+  public static final int RELAX_PEOPLE = 4;
+  public static final int UPDATE_EDGES = 5;
+  public static final int UPDATE_NODES = 6;
+  public static final int UPDATE_PEOPLE = 7;
+  /** PhysicsEngine.finalizeFrame() */
+  public static final int FINALIZE_FRAME = 8;
+  /** Background and edges */
+  public static final int EDGES = 9;
+  public static final int NAMES_BLUR = 10;
+  public static final int NAMES_SHARP = 11;
+  /** File sprites */
+  public static final int FILES = 12;
+  /** Legend, help, debug data, popular nodes, date */
+  public static final int OVERLAY = 13;
+  public static final int HISTOGRAMS = 14;
+  public static final int SNAPSHOT = 15;
+  public static final int VIDEO = 16;
+  public static final int CHECKPOINT = 17;
+  public static final int PHASE_COUNT = 18;
+  /** Not a phase: the whole frame, startFrame() to endFrame() */
+  public static final int FRAME = PHASE_COUNT;
+
+  private static final String[] NAMES = {
+      "events", "init frame", "relax edges", "relax nodes", "relax people", "update edges",
+      "update nodes", "update people", "finalize frame", "edges", "names blur", "names sharp",
+      "files", "overlay", "histograms", "snapshot", "video", "checkpoint", "frame"};
+
+  private final int window;
+  /** Last window times of each phase and of the frame, circular */
+  private final long[][] samples;
+  private final long[] current = new long[PHASE_COUNT + 1];
+  private final long[] sorted;
+  private int next = 0;
+  private int count = 0;
+  private long frameStart;
+  private long lapStart;
+  private PrintWriter log = null;
+
+  /**
+   * @param window number of frames the percentiles are computed on
+   */
+  FrameProfiler(int window) {
+    this.window = window;
+    samples = new long[PHASE_COUNT + 1][window];
+    sorted = new long[window];
+  }
+
+  /**
+   * Write the times of every frame to a CSV file from now on, one column per phase.
+   * @param file file to write
+   * @throws IOException if the file cannot be created
+   */
+  public void openLog(String file) throws IOException {
+    log = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    log.print("frame");
+    for (String name : NAMES) {
+      log.print(',');
+      log.print(name.replace(' ', '_') + "_ns");
+    }
+    log.println();
+  }
+
+  public void startFrame() {
+    Arrays.fill(current, 0);
+    frameStart = System.nanoTime();
+    lapStart = frameStart;
+  }
+
+  /**
+   * End a phase: the time since the previous lap, or since startFrame(), goes to it.
+   */
+  public void lap(int phase) {
+    long now = System.nanoTime();
+    current[phase] += now - lapStart;
+    lapStart = now;
+  }
+
+  /**
+   * @param frame number of the frame, for the log
+   */
+  public void endFrame(int frame) {
+    current[FRAME] = System.nanoTime() - frameStart;
+    for (int i = 0; i <= PHASE_COUNT; i++) {
+      samples[i][next] = current[i];
+    }
+    next = (next + 1) % window;
+    if (count < window) {
+      count++;
+    }
+    if (log != null) {
+      log.print(frame);
+      for (long t : current) {
+        log.print(',');
+        log.print(t);
+      }
+      log.println();
+    }
+  }
+
+  /**
+   * @return name of a phase, or "frame" for FRAME
+   */
+  public static String getName(int phase) {
+    return NAMES[phase];
+  }
+
+  /**
+   * @return number of frames the percentiles are computed on, at most the window
+   */
+  public int getFrameCount() {
+    return count;
+  }
+
+  /**
+   * @return time of the phase in the last frame, in milliseconds
+   */
+  public double getLastMillis(int phase) {
+    return count == 0 ? 0 : samples[phase][(next + window - 1) % window] / 1e6;
+  }
+
+  /**
+   * Several percentiles of a phase, sorting the window once.
+   * @param phase phase, or FRAME
+   * @param fractions 0.5 for the median, 0.95, 1 for the maximum...
+   * @param millis receives, for each fraction, the time of the phase that this fraction of the
+   *        frames of the window do not exceed, in milliseconds
+   */
+  public void getPercentilesMillis(int phase, double[] fractions, double[] millis) {
+    if (count == 0) {
+      Arrays.fill(millis, 0, fractions.length, 0);
+      return;
+    }
+    sort(phase);
+    for (int i = 0; i < fractions.length; i++) {
+      millis[i] = sortedPercentileMillis(fractions[i]);
+    }
+  }
+
+  private void sort(int phase) {
+    System.arraycopy(samples[phase], 0, sorted, 0, count);
+    Arrays.sort(sorted, 0, count);
+  }
+
+  private double sortedPercentileMillis(double fraction) {
+    int rank = (int) Math.ceil(fraction * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, rank))] / 1e6;
+  }
+
+  /**
+   * Flush and close the CSV log.
+   */
+  public void close() {
+    if (log != null) {
+      log.close();
+      log = null;
+    }
+  }
+}
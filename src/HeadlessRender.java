@@ -0,0 +1,115 @@
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+/**
+ * @brief Batch renderer driving code_swarm offscreen, without a display or frame rate cap
+ *
+ * The sketch is built without a window and its frames are drawn one after the other in the
+ * calling thread, as fast as the CPU allows, until the history is over. Combined with
+ * TakeSnapshots this renders a whole history to frame files on a machine without X.
+ * The achieved frame rate is reported at the end.
+ *
+ * Processing needs a few answers from AWT that the headless toolkit refuses to give: these
+ * come from an OffscreenToolkit while the sketch is built. Replacing the toolkit needs access
+ * to java.awt internals, which Java 16 and later only grant with:
+ * <pre>
+ *   java --add-opens java.desktop/java.awt=ALL-UNNAMED HeadlessRender data/sample.config
+ * </pre>
+ */
+public class HeadlessRender {
+
+  private static final String ADD_OPENS = "--add-opens java.desktop/java.awt=ALL-UNNAMED";
+
+  /**
+   * Build a code_swarm instance that never opens a window.
+   * @return the sketch, not initialized yet
+   */
+  static code_swarm createSketch() throws Exception {
+    System.setProperty("java.awt.headless", "true");
+    Toolkit toolkit = Toolkit.getDefaultToolkit();
+    GraphicsEnvironment.getLocalGraphicsEnvironment();
+
+    Field toolkitField = Toolkit.class.getDeclaredField("toolkit");
+    Field headlessField = GraphicsEnvironment.class.getDeclaredField("headless");
+    toolkitField.setAccessible(true);
+    headlessField.setAccessible(true);
+
+    Object headless = headlessField.get(null);
+    toolkitField.set(null, new OffscreenToolkit(toolkit, new Dimension(1920, 1080)));
+    try {
+      // Initialize the AWT classes while still headless, so that no native peer is set up
+      Class.forName("code_swarm", true, HeadlessRender.class.getClassLoader());
+      // Applet refuses to be built in a headless environment
+      headlessField.set(null, Boolean.FALSE);
+      code_swarm sketch = new code_swarm();
+      sketch.offscreen = true;
+      return sketch;
+    } finally {
+      toolkitField.set(null, toolkit);
+      headlessField.set(null, headless);
+    }
+  }
+
+  /**
+   * @param args : path to the config file, optionally followed by Key=Value settings
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: java " + ADD_OPENS + " HeadlessRender <configfile> [Key=Value...]");
+      System.exit(1);
+    }
+
+    code_swarm sketch;
+    try {
+      CodeSwarmConfig config = new CodeSwarmConfig(args[0]);
+      config.setOverrides(args, 1);
+      // code_swarm must not be loaded before createSketch() sets up AWT
+      sketch = createSketch();
+      code_swarm.cfg = config;
+    } catch (IOException e) {
+      System.err.println("Failed due to exception: " + e.getMessage());
+      System.exit(1);
+      return;
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    } catch (Exception e) {
+      // InaccessibleObjectException on Java 16 and later without the --add-opens flag
+      System.err.println("Could not set up offscreen rendering: " + e);
+      System.err.println("Run java with " + ADD_OPENS);
+      System.exit(1);
+      return;
+    }
+
+    int firstFrame;
+    long start;
+    try {
+      sketch.init();
+      // setup() runs until it succeeds, it starts over once size() picked the renderer, and it
+      // may resume from a checkpoint
+      while (sketch.frameCount == 0 && !sketch.finished) {
+        sketch.handleDisplay();
+      }
+      firstFrame = sketch.frameCount;
+      start = System.nanoTime();
+      while (!sketch.finished) {
+        sketch.handleDisplay();
+      }
+    } catch (Exception e) {
+      // Leave no thread behind, the caller waits for the exit status
+      System.err.println("Rendering failed at frame " + sketch.frameCount + ":");
+      e.printStackTrace();
+      System.exit(1);
+      return;
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    int frames = sketch.frameCount - firstFrame;
+    System.out.println(frames + " frames in " + String.format("%.1f", seconds) + " s, "
+        + String.format("%.1f", frames / seconds) + " frames/s");
+    System.exit(0);
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * @brief Fixed capacity series of ints, the oldest value dropped when a new one comes in
+ *
+ * A circular buffer over one preallocated array: adding a value boxes nothing and allocates
+ * nothing, unlike the LinkedList of Integers trimmed with remove() it replaces.
+ */
+class IntRing {
+
+  private final int[] values;
+  /** Index of the oldest value */
+  private int start = 0;
+  private int size = 0;
+
+  /**
+   * @param capacity number of values kept
+   */
+  IntRing(int capacity) {
+    values = new int[Math.max(1, capacity)];
+  }
+
+  /**
+   * Append a value, dropping the oldest one if full.
+   */
+  public void add(int value) {
+    if (size < values.length) {
+      values[(start + size++) % values.length] = value;
+    } else {
+      values[start] = value;
+      start = (start + 1) % values.length;
+    }
+  }
+
+  /**
+   * @param i index between 0 (oldest) and size() - 1 (newest)
+   * @return value at index i
+   */
+  public int get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    return values[(start + i) % values.length];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    start = 0;
+    size = 0;
+  }
+}
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * @brief Literals of ColorTest rules, each tagged with its rule number, matched against a
+ * name in one pass over it
+ *
+ * Anchored at the start (or at the end for a reversed trie), firstPrefix() walks down the trie
+ * along the name. For the literals occurring anywhere in the name, link() turns the trie into
+ * an Aho-Corasick automaton for firstOccurrence(). Both return the lowest rule number whose
+ * literal matches, so that the first rule still wins whatever the number of rules.
+ */
+class LiteralTrie
+{
+	/** No literal matches */
+	static final int NONE = Integer.MAX_VALUE;
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final int[] NO_CHILDREN = new int[0];
+
+	private final boolean reversed;
+	private int size = 1;
+	/** Sorted characters leading to the children of each node */
+	private char[][] keys = new char[16][];
+	/** Children of each node, in the order of keys */
+	private int[][] children = new int[16][];
+	/** Lowest rule among the literals ending at each node */
+	private int[] rule = new int[16];
+	/** Longest proper suffix of each node that is also in the trie, after link() */
+	private int[] fail;
+	/** Lowest rule among the literals ending at each node or at its suffixes, after link() */
+	private int[] best;
+
+	/**
+	 * @param reversed true to read literals and names from their end
+	 */
+	LiteralTrie( boolean reversed )
+	{
+		this.reversed = reversed;
+		keys[0] = NO_KEYS;
+		children[0] = NO_CHILDREN;
+		rule[0] = NONE;
+	}
+
+	/**
+	 * @param literal text of the rule, not empty
+	 * @param r number of the rule, the lowest wins
+	 */
+	public void add( String literal, int r )
+	{
+		int node = 0;
+		for (int i = 0; i < literal.length(); i++)
+		{
+			char c = charAt( literal, i );
+			int next = child( node, c );
+			node = next >= 0 ? next : addChild( node, c );
+		}
+		rule[node] = Math.min( rule[node], r );
+		fail = null;
+	}
+
+	/**
+	 * @param s name to test
+	 * @return lowest rule whose literal starts s (ends s if reversed), NONE if none
+	 */
+	public int firstPrefix( String s )
+	{
+		int first = NONE;
+		int node = 0;
+		for (int i = 0; i < s.length() && node >= 0; i++)
+		{
+			node = child( node, charAt( s, i ) );
+			if (node >= 0)
+				first = Math.min( first, rule[node] );
+		}
+		return first;
+	}
+
+	/**
+	 * Compute the failure links, needed by firstOccurrence() once literals were added.
+	 */
+	public void link()
+	{
+		fail = new int[size];
+		best = new int[size];
+		best[0] = rule[0];
+		// breadth first, so that the suffixes of a node are done before it
+		int[] queue = new int[size];
+		int head = 0, tail = 0;
+		queue[tail++] = 0;
+		while (head < tail)
+		{
+			int node = queue[head++];
+			for (int k = 0; k < keys[node].length; k++)
+			{
+				int next = children[node][k];
+				int f = 0;
+				if (node != 0)
+				{
+					f = fail[node];
+					while (f != 0 && child( f, keys[node][k] ) < 0)
+						f = fail[f];
+					f = Math.max( 0, child( f, keys[node][k] ) );
+				}
+				fail[next] = f;
+				best[next] = Math.min( rule[next], best[f] );
+				queue[tail++] = next;
+			}
+		}
+	}
+
+	/**
+	 * @param s name to test
+	 * @return lowest rule whose literal occurs in s, NONE if none
+	 */
+	public int firstOccurrence( String s )
+	{
+		int first = NONE;
+		int node = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = charAt( s, i );
+			int next = child( node, c );
+			while (next < 0 && node != 0)
+			{
+				node = fail[node];
+				next = child( node, c );
+			}
+			node = Math.max( 0, next );
+			first = Math.min( first, best[node] );
+		}
+		return first;
+	}
+
+	private char charAt( String s, int i )
+	{
+		return s.charAt( reversed ? s.length() - 1 - i : i );
+	}
+
+	private int child( int node, char c )
+	{
+		int k = Arrays.binarySearch( keys[node], c );
+		return k >= 0 ? children[node][k] : -1;
+	}
+
+	private int addChild( int node, char c )
+	{
+		if (size == rule.length)
+		{
+			keys = Arrays.copyOf( keys, size * 2 );
+			children = Arrays.copyOf( children, size * 2 );
+			rule = Arrays.copyOf( rule, size * 2 );
+		}
+		int next = size++;
+		keys[next] = NO_KEYS;
+		children[next] = NO_CHILDREN;
+		rule[next] = NONE;
+
+		// keep the characters sorted for the binary search
+		int k = -Arrays.binarySearch( keys[node], c ) - 1;
+		int n = keys[node].length;
+		char[] newKeys = new char[n + 1];
+		int[] newChildren = new int[n + 1];
+		System.arraycopy( keys[node], 0, newKeys, 0, k );
+		System.arraycopy( children[node], 0, newChildren, 0, k );
+		newKeys[k] = c;
+		newChildren[k] = next;
+		System.arraycopy( keys[node], k, newKeys, k + 1, n - k );
+		System.arraycopy( children[node], k, newChildren, k + 1, n - k );
+		keys[node] = newKeys;
+		children[node] = newChildren;
+		return next;
+	}
+}
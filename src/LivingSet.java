@@ -0,0 +1,121 @@
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @brief Array backed set of living drawable objects, updated in place
+ *
+ * Replaces the linked lists which were drained into brand new lists every frame: elements
+ * are appended at the end, and dead ones are removed by moving the last element into their
+ * slot (swap-remove), so a frame where nothing dies costs no allocation and no copy at all.
+ * The order of the elements is not preserved by removals.
+ *
+ * Iterate by index, removing dead elements while going:
+ * <pre>
+ *   for (int i = 0; i &lt; set.size(); ) {
+ *     if (set.get(i).decay()) {
+ *       i++;
+ *     } else {
+ *       set.swapRemove(i);
+ *     }
+ *   }
+ * </pre>
+ *
+ * @param <T> kind of drawable stored
+ */
+class LivingSet<T extends code_swarm.Drawable> extends AbstractCollection<T> {
+
+  private Object[] elements;
+  private int size = 0;
+
+  LivingSet() {
+    this(64);
+  }
+
+  /**
+   * @param capacity initial capacity
+   */
+  LivingSet(int capacity) {
+    elements = new Object[Math.max(1, capacity)];
+  }
+
+  /**
+   * Append an element.
+   * @param element element to add, must not already be in the set
+   * @return true
+   */
+  public boolean add(T element) {
+    if (size == elements.length) {
+      Object[] grown = new Object[size * 2];
+      System.arraycopy(elements, 0, grown, 0, size);
+      elements = grown;
+    }
+    elements[size++] = element;
+    return true;
+  }
+
+  /**
+   * @param i index between 0 and size() - 1
+   * @return element at index i
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    return (T) elements[i];
+  }
+
+  /**
+   * Remove the element at index i, moving the last element into its place.
+   * @param i index between 0 and size() - 1
+   */
+  public void swapRemove(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+    size--;
+    elements[i] = elements[size];
+    elements[size] = null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      elements[i] = null;
+    }
+    size = 0;
+  }
+
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int next = 0;
+      private int last = -1;
+
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      public T next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        return get(next++);
+      }
+
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        // the last element moves into the removed slot, visit it next
+        swapRemove(last);
+        next = last;
+        last = -1;
+      }
+    };
+  }
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * @brief Interns names into dense int ids, the first name seen getting 0
+ *
+ * The event loader interns the author and the filename of every event once, so that the
+ * render thread finds the nodes of an event by id in a NodeRegistry, without building or
+ * hashing strings.
+ *
+ * Open addressing with linear probing over a power of two table. The readers hand out the
+ * same String instance for a name seen before, so a probe usually ends on a reference
+ * comparison, and String caches its hash code: interning a known name costs a few loads.
+ * null is a name like any other.
+ *
+ * Not thread-safe. Once filled by a thread, the ids may be handed to other threads, with
+ * the names they need, through a synchronizing queue.
+ */
+class NameTable {
+
+  /** Slot of the table that holds no name */
+  private static final int EMPTY = -1;
+
+  /** Id of each slot, EMPTY if free */
+  private int[] slots;
+  /** Name of each id */
+  private String[] names;
+  private int size = 0;
+  private int nullId = EMPTY;
+
+  NameTable() {
+    this(1024);
+  }
+
+  /**
+   * @param capacity number of names expected, the table grows past it
+   */
+  NameTable(int capacity) {
+    int tableSize = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+    slots = new int[tableSize * 2];
+    Arrays.fill(slots, EMPTY);
+    names = new String[tableSize];
+  }
+
+  /**
+   * @param name name to intern, may be null
+   * @return id of the name, a new one if not seen before
+   */
+  public int intern(String name) {
+    if (name == null) {
+      if (nullId == EMPTY) {
+        nullId = add(null);
+      }
+      return nullId;
+    }
+    int mask = slots.length - 1;
+    int i = mix(name.hashCode()) & mask;
+    while (true) {
+      int id = slots[i];
+      if (id == EMPTY) {
+        id = add(name);
+        slots[i] = id;
+        if (size * 2 > slots.length) {
+          rehash();
+        }
+        return id;
+      }
+      String other = names[id];
+      if (other == name || (other != null && other.equals(name))) {
+        return id;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * @param name name to look up, may be null
+   * @return id of the name, -1 if not interned
+   */
+  public int find(String name) {
+    if (name == null) {
+      return nullId;
+    }
+    int mask = slots.length - 1;
+    int i = mix(name.hashCode()) & mask;
+    while (true) {
+      int id = slots[i];
+      if (id == EMPTY) {
+        return -1;
+      }
+      String other = names[id];
+      if (other == name || (other != null && other.equals(name))) {
+        return id;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * @param id id returned by intern()
+   * @return the name
+   */
+  public String getName(int id) {
+    return names[id];
+  }
+
+  /**
+   * @return number of names interned, ids go from 0 to size() - 1
+   */
+  public int size() {
+    return size;
+  }
+
+  private int add(String name) {
+    if (size == names.length) {
+      String[] grown = new String[size * 2];
+      System.arraycopy(names, 0, grown, 0, size);
+      names = grown;
+    }
+    names[size] = name;
+    return size++;
+  }
+
+  /**
+   * Double the table, keeping it at most half full.
+   */
+  private void rehash() {
+    int[] grown = new int[slots.length * 2];
+    Arrays.fill(grown, EMPTY);
+    int mask = grown.length - 1;
+    for (int id = 0; id < size; id++) {
+      String name = names[id];
+      if (name == null) {
+        continue;
+      }
+      int i = mix(name.hashCode()) & mask;
+      while (grown[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      grown[i] = id;
+    }
+    slots = grown;
+  }
+
+  /**
+   * Spread the hash code, String hashes of similar names differ in the low bits only.
+   */
+  private static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,101 @@
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @brief Every node ever created of one kind, indexed by the NameTable id of its name
+ *
+ * Replaces the maps from names to nodes: looking up the node of an event is an array read.
+ * Nodes are never removed, a node that dies stays registered and comes back to life when its
+ * name shows up again. Iteration goes in id order, which is the order the names first
+ * appeared in the history, skipping the ids without a node yet.
+ *
+ * @param <T> kind of node stored
+ */
+class NodeRegistry<T extends code_swarm.Node> extends AbstractCollection<T> {
+
+  private Object[] nodes;
+  private int size = 0;
+
+  NodeRegistry() {
+    this(1024);
+  }
+
+  /**
+   * @param capacity initial capacity
+   */
+  NodeRegistry(int capacity) {
+    nodes = new Object[Math.max(1, capacity)];
+  }
+
+  /**
+   * @param id name id
+   * @return node of the name, null if none
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int id) {
+    return id < nodes.length ? (T) nodes[id] : null;
+  }
+
+  /**
+   * Register the node of a name.
+   * @param id name id, without a node yet
+   * @param node node of the name
+   */
+  public void put(int id, T node) {
+    if (id >= nodes.length) {
+      Object[] grown = new Object[Math.max(id + 1, nodes.length * 2)];
+      System.arraycopy(nodes, 0, grown, 0, nodes.length);
+      nodes = grown;
+    }
+    if (nodes[id] == null) {
+      size++;
+    }
+    nodes[id] = node;
+  }
+
+  /**
+   * @return number of nodes registered
+   */
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = null;
+    }
+    size = 0;
+  }
+
+  public Iterator<T> iterator() {
+    return new Iterator<T>() {
+      private int next = advance(0);
+
+      private int advance(int i) {
+        while (i < nodes.length && nodes[i] == null) {
+          i++;
+        }
+        return i;
+      }
+
+      public boolean hasNext() {
+        return next < nodes.length;
+      }
+
+      @SuppressWarnings("unchecked")
+      public T next() {
+        if (next >= nodes.length) {
+          throw new NoSuchElementException();
+        }
+        T node = (T) nodes[next];
+        next = advance(next + 1);
+        return node;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * @brief Packed (structure of arrays) storage of node positions, speeds and masses
+ *
+ * The nodes loaded in a frame get dense slots, in load order, which index the arrays below.
+ * The physics data is copied in from the nodes at the start of a frame (load), worked on
+ * through the arrays only, and copied back once the frame is done (store), so drawing and the
+ * other engines keep using the Node vectors.
+ *
+ * Slots are handed out again every frame, so the arrays only grow with the number of nodes
+ * living in a frame, not with the nodes of the whole history. The only memory kept per node
+ * ever created is two ints indexed by its id, telling whether it was loaded in the current
+ * frame and into which slot. The nodes themselves are only referenced until store().
+ *
+ * @see PhysicsEngineWikiPacked
+ */
+class NodeStore {
+
+  float[] x = new float[256];
+  float[] y = new float[256];
+  float[] speedX = new float[256];
+  float[] speedY = new float[256];
+  float[] mass = new float[256];
+  float[] maxSpeed = new float[256];
+  /** Node id of each slot, for the draws keyed by node */
+  int[] id = new int[256];
+
+  /** Node of each slot, until store() */
+  private code_swarm.Node[] nodes = new code_swarm.Node[256];
+  private int count = 0;
+
+  /** Frame in which a node was loaded, by node id, to load nodes shared by several lists once */
+  private int[] loadedFrame = new int[256];
+  /** Slot of a node in the frame it was loaded in, by node id */
+  private int[] slotOf = new int[256];
+  private int frame = 0;
+
+  /**
+   * Start a new frame, forgetting which nodes were loaded.
+   */
+  public void beginFrame() {
+    frame++;
+    count = 0;
+  }
+
+  /**
+   * Copy the physics data of a node into the arrays, once per frame.
+   * @param node node to load
+   * @return slot of the node in this frame
+   */
+  public int load(code_swarm.Node node) {
+    int nodeId = node.id;
+    if (nodeId >= loadedFrame.length) {
+      int len = Math.max(nodeId + 1, loadedFrame.length * 2);
+      loadedFrame = grow(loadedFrame, len);
+      slotOf = grow(slotOf, len);
+    }
+    if (loadedFrame[nodeId] == frame) {
+      return slotOf[nodeId];
+    }
+    if (count == nodes.length) {
+      growSlots(count * 2);
+    }
+    int slot = count++;
+    loadedFrame[nodeId] = frame;
+    slotOf[nodeId] = slot;
+    nodes[slot] = node;
+    id[slot] = nodeId;
+    x[slot] = node.mPosition.x;
+    y[slot] = node.mPosition.y;
+    speedX[slot] = node.mSpeed.x;
+    speedY[slot] = node.mSpeed.y;
+    mass[slot] = node.mass;
+    maxSpeed[slot] = node.maxSpeed;
+    return slot;
+  }
+
+  /**
+   * Copy positions and speeds of every node loaded in this frame back into the nodes.
+   */
+  public void store() {
+    for (int slot = 0; slot < count; slot++) {
+      code_swarm.Node node = nodes[slot];
+      node.mPosition.x = x[slot];
+      node.mPosition.y = y[slot];
+      node.mSpeed.x = speedX[slot];
+      node.mSpeed.y = speedY[slot];
+      // do not keep dead nodes reachable
+      nodes[slot] = null;
+    }
+  }
+
+  private void growSlots(int len) {
+    x = grow(x, len);
+    y = grow(y, len);
+    speedX = grow(speedX, len);
+    speedY = grow(speedY, len);
+    mass = grow(mass, len);
+    maxSpeed = grow(maxSpeed, len);
+    id = grow(id, len);
+    code_swarm.Node[] n = new code_swarm.Node[len];
+    System.arraycopy(nodes, 0, n, 0, nodes.length);
+    nodes = n;
+  }
+
+  private static float[] grow(float[] a, int len) {
+    float[] b = new float[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private static int[] grow(int[] a, int len) {
+    int[] b = new int[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+}
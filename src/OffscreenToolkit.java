@@ -0,0 +1,143 @@
+import java.awt.Dialog;
+import java.awt.Dimension;
+import java.awt.Event;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Frame;
+import java.awt.HeadlessException;
+import java.awt.Image;
+import java.awt.PrintJob;
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
+import java.awt.font.TextAttribute;
+import java.awt.im.InputMethodHighlight;
+import java.awt.image.ColorModel;
+import java.awt.image.ImageObserver;
+import java.awt.image.ImageProducer;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @brief AWT toolkit answering the screen queries Processing makes without a display
+ *
+ * PApplet asks the toolkit for the menu shortcut key (at class load) and the screen size
+ * (at construction), which the headless toolkit refuses to answer. This toolkit answers
+ * them with fixed values and hands everything else to the real toolkit.
+ *
+ * @see HeadlessRender
+ */
+class OffscreenToolkit extends Toolkit {
+
+  private final Toolkit toolkit;
+  private final Dimension screenSize;
+
+  /**
+   * @param toolkit real toolkit
+   * @param screenSize screen size to report
+   */
+  OffscreenToolkit(Toolkit toolkit, Dimension screenSize) {
+    this.toolkit = toolkit;
+    this.screenSize = screenSize;
+  }
+
+  /**
+   * Deprecated since Java 10, but the Processing core we ship calls this one and not
+   * getMenuShortcutKeyMaskEx(), and expects the old style mask.
+   */
+  @SuppressWarnings("deprecation")
+  public int getMenuShortcutKeyMask() {
+    return Event.CTRL_MASK;
+  }
+
+  public Dimension getScreenSize() {
+    return new Dimension(screenSize);
+  }
+
+  public int getScreenResolution() {
+    try {
+      return toolkit.getScreenResolution();
+    } catch (HeadlessException e) {
+      return 72;
+    }
+  }
+
+  public ColorModel getColorModel() {
+    return toolkit.getColorModel();
+  }
+
+  @SuppressWarnings("deprecation")
+  public String[] getFontList() {
+    return toolkit.getFontList();
+  }
+
+  @SuppressWarnings("deprecation")
+  public FontMetrics getFontMetrics(Font font) {
+    return toolkit.getFontMetrics(font);
+  }
+
+  public void sync() {
+    toolkit.sync();
+  }
+
+  public Image getImage(String filename) {
+    return toolkit.getImage(filename);
+  }
+
+  public Image getImage(URL url) {
+    return toolkit.getImage(url);
+  }
+
+  public Image createImage(String filename) {
+    return toolkit.createImage(filename);
+  }
+
+  public Image createImage(URL url) {
+    return toolkit.createImage(url);
+  }
+
+  public boolean prepareImage(Image image, int width, int height, ImageObserver observer) {
+    return toolkit.prepareImage(image, width, height, observer);
+  }
+
+  public int checkImage(Image image, int width, int height, ImageObserver observer) {
+    return toolkit.checkImage(image, width, height, observer);
+  }
+
+  public Image createImage(ImageProducer producer) {
+    return toolkit.createImage(producer);
+  }
+
+  public Image createImage(byte[] data, int offset, int length) {
+    return toolkit.createImage(data, offset, length);
+  }
+
+  public PrintJob getPrintJob(Frame frame, String title, Properties props) {
+    return toolkit.getPrintJob(frame, title, props);
+  }
+
+  public void beep() {
+    toolkit.beep();
+  }
+
+  public Clipboard getSystemClipboard() {
+    return toolkit.getSystemClipboard();
+  }
+
+  protected EventQueue getSystemEventQueueImpl() {
+    return toolkit.getSystemEventQueue();
+  }
+
+  public boolean isModalityTypeSupported(Dialog.ModalityType modalityType) {
+    return toolkit.isModalityTypeSupported(modalityType);
+  }
+
+  public boolean isModalExclusionTypeSupported(Dialog.ModalExclusionType modalExclusionType) {
+    return toolkit.isModalExclusionTypeSupported(modalExclusionType);
+  }
+
+  public Map<TextAttribute, ?> mapInputMethodHighlight(InputMethodHighlight highlight) {
+    return toolkit.mapInputMethodHighlight(highlight);
+  }
+}
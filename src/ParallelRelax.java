@@ -0,0 +1,95 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @brief Fork-join helper to spread a physics engine relax loop over several cores
+ *
+ * The relax phase only reads node positions and writes node speeds, so the force on every
+ * node can be gathered independently from the others. An index range is cut into chunks
+ * whose boundaries only depend on the range size and the thread count, and each chunk is
+ * handed to a worker of a dedicated ForkJoinPool.
+ *
+ * Writes must stay confined to the indexes of the chunk being run (one node, one slot of a
+ * result buffer), the caller then applies shared effects (like edge forces, which touch both
+ * ends of the edge) sequentially in index order. Results are then identical to the serial
+ * loop, whatever the thread count.
+ */
+class ParallelRelax {
+
+  /**
+   * Work done over a chunk of indexes.
+   */
+  interface Body {
+    /**
+     * @param from first index of the chunk
+     * @param to index following the last one of the chunk
+     */
+    void run(int from, int to);
+  }
+
+  /** Chunks per thread, for load balancing between dense and sparse areas */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final ForkJoinPool pool;
+  private final int threads;
+
+  /**
+   * @param threads number of worker threads, all available processors if <= 0
+   */
+  ParallelRelax(int threads) {
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    this.threads = threads;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  /**
+   * @return number of worker threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Run body over [0, n) in chunks, and wait for all of them to complete.
+   * @param n size of the index range
+   * @param body work to do on every chunk
+   */
+  public void forChunks(int n, Body body) {
+    if (n == 0) {
+      return;
+    }
+    int grain = Math.max(1, (n + threads * CHUNKS_PER_THREAD - 1) / (threads * CHUNKS_PER_THREAD));
+    pool.invoke(new Chunk(body, 0, n, grain));
+  }
+
+  private static class Chunk extends RecursiveAction {
+
+    /** @remark needed for any serializable class */
+    private static final long serialVersionUID = 0;
+
+    private final Body body;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    Chunk(Body body, int from, int to, int grain) {
+      this.body = body;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    protected void compute() {
+      if (to - from <= grain) {
+        body.run(from, to);
+      } else {
+        // split on a multiple of grain so that chunks do not depend on scheduling
+        int chunks = (to - from + grain - 1) / grain;
+        int middle = from + (chunks / 2) * grain;
+        invokeAll(new Chunk(body, from, middle, grain), new Chunk(body, middle, to, grain));
+      }
+    }
+  }
+}
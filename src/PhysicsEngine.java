@@ -1,6 +1,4 @@
-import java.util.PriorityQueue;
 import java.util.Properties;
-import java.util.LinkedList;
 import javax.vecmath.Vector2f;
 
 /**
@@ -35,74 +33,59 @@ public interface PhysicsEngine
   /**
    * Method that allows Physics Engine to modify Speed / Position during the relax phase.
    * 
-   * @param edges the nodes to which the force apply
-   * 
-   * @return LinkedList<code_swarm.Edge> which is the list of edges which are still active/living
-   *           after the relaxing.
+   * @param edges the living edges to which the force apply
    *
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public LinkedList<code_swarm.Edge> onRelaxEdges(LinkedList<code_swarm.Edge> edges);
+  public void onRelaxEdges(LivingSet<code_swarm.Edge> edges);
   
   /**
    * Method that allows Physics Engine to modify Speed / Position during the relax phase.
    * 
-   * @param fNodes the nodes to which the force apply
-   * 
-   * @return LinkedList<code_swarm.FileNode> which is the list of FileNodes which are still active/living
-   *           after the relaxing.
+   * @param fNodes the living nodes to which the force apply
    *
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public LinkedList<code_swarm.WikiNode> onRelaxNodes(LinkedList<code_swarm.WikiNode> fNodes);
+  public void onRelaxNodes(LivingSet<code_swarm.WikiNode> fNodes);
   
   /**
    * Method that allows Physics Engine to modify Speed / Position during the relax phase.
    * 
-   * @param pNodes the nodes to which the force apply
-   *
-   * @return LinkedList<code_swarm.PersonNode> which is the list of PersonNodes which are still active/living
-   *           after the relaxing.
+   * @param pNodes the living people to which the force apply
    * 
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public PriorityQueue<code_swarm.PersonNode> onRelaxPeople(PriorityQueue<code_swarm.PersonNode> pNodes);
+  public void onRelaxPeople(ActivityRanking pNodes);
   
   /**
    * Method that allows Physics Engine to modify Speed / Position during the update phase.
    * 
-   * @param edges the nodes to which the force apply
-   * 
-   * @return LinkedList<code_swarm.Edge> which is the list of edges which are still active/living
-   *           after the update.
+   * @param edges the living edges to which the force apply, edges which are no longer
+   *           alive after the update must be removed from it (in place).
    * 
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public LinkedList<code_swarm.Edge> onUpdateEdges(LinkedList<code_swarm.Edge> edges);
+  public void onUpdateEdges(LivingSet<code_swarm.Edge> edges);
   
   /**
    * Method that allows Physics Engine to modify Speed / Position during the update phase.
    * 
-   * @param fNode the node to which the force apply
-   * 
-   * @return LinkedList<code_swarm.FileNode> which is the list of FileNodes which are still active/living
-   *           after the update.
+   * @param fNodes the living nodes to which the force apply, nodes which are no longer
+   *           alive after the update must be removed from it (in place).
    * 
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public LinkedList<code_swarm.WikiNode> onUpdateNodes(LinkedList<code_swarm.WikiNode> fNodes);
+  public void onUpdateNodes(LivingSet<code_swarm.WikiNode> fNodes);
   
   /**
    * Method that allows Physics Engine to modify Speed / Position during the update phase.
    * 
-   * @param pNode the node to which the force apply
-   * 
-   * @return LinkedList<code_swarm.PersonNode> which is the list of PersonNodes which are still active/living
-   *           after the update.
+   * @param pNodes the living people to which the force apply, people who are no longer
+   *           alive after the update must be removed from it (in place, through its iterator).
    * 
    * @Note Standard physics is "Position Variation = Speed x Duration" with a convention of "Duration=1" between to frames
    */
-  public PriorityQueue<code_swarm.PersonNode> onUpdatePeople(PriorityQueue<code_swarm.PersonNode> pNodes);
+  public void onUpdatePeople(ActivityRanking pNodes);
   
   /**
    * 
@@ -0,0 +1,81 @@
+import java.util.Collection;
+import java.util.Properties;
+import javax.vecmath.Vector2f;
+
+/**
+ * @brief Wiki physics with Barnes-Hut approximated repulsion between nodes
+ *
+ * Edges, position updates and life decay are those of PhysicsEngineWiki. Only the node-node
+ * repulsion of the relax phase changes: a quadtree is built over the living nodes every frame
+ * and groups of nodes that are far enough away (cell size / distance < theta) are treated as
+ * a single mass at their centroid, for O(n log n) relax cost instead of O(n^2).
+ *
+ * Groups are only merged when they lie entirely within the 100px (lensq < 10000) range of the
+ * force, so nodes beyond that range still exert no force at all.
+ *
+ * @see PhysicsEngine Physical Engine Interface
+ * @see QuadTree
+ */
+public class PhysicsEngineBarnesHut extends PhysicsEngineWiki {
+
+  /** Squared distance beyond which two nodes do not repulse each other */
+  private static final float REPULSION_CUTOFF_SQ = 10000;
+
+  private float THETA;
+
+  private QuadTree tree = new QuadTree();
+  private float[] force = new float[2];
+  private Vector2f forceSummation = new Vector2f();
+
+  /**
+   * Method for initializing parameters.
+   * @param c The code_swarm object that we are using.
+   * @param p Properties from the config file.
+   */
+  public void setup(code_swarm c, Properties p) {
+    super.setup(c, p);
+    THETA = Float.parseFloat(cfg.getProperty("theta", "0.5"));
+    if (THETA < 0) {
+      THETA = 0;
+    }
+  }
+
+  /**
+   * Modify Speed / Position during the relax phase.
+   *
+   * @param fNodes the nodes to which the force apply
+   *
+   */
+  public void onRelaxNodes(LivingSet<code_swarm.WikiNode> fNodes) {
+    relaxRepulsion(fNodes);
+  }
+
+  /**
+   * Modify Speed / Position during the relax phase.
+   *
+   * @param pNodes the nodes to which the force apply
+   *
+   */
+  public void onRelaxPeople(ActivityRanking pNodes) {
+    relaxRepulsion(pNodes);
+    for (code_swarm.PersonNode pNode : pNodes) {
+      pNode.mSpeed.scale(1.0f / 12);
+    }
+  }
+
+  /**
+   * Apply the repulsive force between all the given nodes, approximated through the quadtree.
+   *
+   * Forces are computed from the positions at the start of the call, which is what the
+   * pairwise loop of PhysicsEngineWiki does since relaxing only changes speeds.
+   */
+  private void relaxRepulsion(Collection<? extends code_swarm.Node> nodes) {
+    tree.build(nodes);
+    for (int i = 0; i < tree.size(); i++) {
+      tree.accumulateForce(i, THETA, REPULSION_CUTOFF_SQ, FORCE_NODES_MULTIPLIER,
+          FORCE_CALCULATION_RANDOMIZER, random, force);
+      forceSummation.set(force[0], force[1]);
+      applyForceToSpeed(tree.body(i), forceSummation);
+    }
+  }
+}
@@ -1,7 +1,5 @@
 //import code_swarm.WikiNode;
-import java.util.PriorityQueue;
 import java.util.Properties;
-import java.util.LinkedList;
 import javax.vecmath.Vector2f;
 
 /**
@@ -21,6 +19,14 @@ public class PhysicsEngineCircle implements PhysicsEngine {
   private float FORCE_TO_SPEED_MULTIPLIER;
   private float SPEED_TO_POSITION_MULTIPLIER;
 
+  /** Stream of the collision jitter, drawn per pair of nodes */
+  private SimulationRandom random;
+  /** Stream of the start locations and velocities */
+  private SimulationRandom layout;
+
+  /** Relax loops over the spatial grid and/or several threads */
+  private ForceRelax relax;
+
   /**
    * Method for initializing parameters.
    * @param c The code_swarm object that we are using.
@@ -28,12 +34,29 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    */
   public void setup(code_swarm c, Properties p) {
     cfg = p;
+    random = c.getPhysicsRandom();
+    layout = c.getLayoutRandom();
     FORCE_EDGE_MULTIPLIER = Float.parseFloat(cfg.getProperty("edgeMultiplier", "1.0"));
     FORCE_CALCULATION_RANDOMIZER = Float
         .parseFloat(cfg.getProperty("calculationRandomizer", "0.01"));
     FORCE_NODES_MULTIPLIER = Float.parseFloat(cfg.getProperty("nodesMultiplier", "1.0"));
     FORCE_TO_SPEED_MULTIPLIER = Float.parseFloat(cfg.getProperty("speedMultiplier", "1.0"));
     SPEED_TO_POSITION_MULTIPLIER = Float.parseFloat(cfg.getProperty("drag", "0.5"));
+    boolean spatialHash = Boolean.valueOf(cfg.getProperty("spatialHash", "false")).booleanValue();
+    int relaxThreads = Integer.parseInt(cfg.getProperty("relaxThreads", "1"));
+    relax = new ForceRelax(new ForceRelax.Forces() {
+      public Vector2f alongEdge(code_swarm.Edge edge) {
+        return calculateForceAlongAnEdge(edge);
+      }
+
+      public Vector2f betweenNodes(code_swarm.Node nodeA, code_swarm.Node nodeB) {
+        return calculateForceBetweenNodes(nodeA, nodeB);
+      }
+
+      public void applyToSpeed(code_swarm.Node node, Vector2f force) {
+        applyForceToSpeed(node, force);
+      }
+    }, spatialHash, relaxThreads);
   }
 
   /**
@@ -114,8 +137,8 @@ public class PhysicsEngineCircle implements PhysicsEngine {
      * If there is a collision, which means the distance is zero
      */
     if (lensq == 0) {
-      force.set((float) Math.random() * FORCE_CALCULATION_RANDOMIZER,
-          (float) Math.random() * FORCE_CALCULATION_RANDOMIZER);
+      force.set(random.pairFloat(nodeA.id, nodeB.id, 0) * FORCE_CALCULATION_RANDOMIZER,
+          random.pairFloat(nodeA.id, nodeB.id, 1) * FORCE_CALCULATION_RANDOMIZER);
     } else if (lensq < 10000) {
       /**
        * No collision and distance is close enough to actually matter.
@@ -215,10 +238,12 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    *
    * @param edges the edges to which the force apply (both ends)
    *
-   * @return Returns a LinkedList of edges which are still alive.
-   *
    */
-  public LinkedList<code_swarm.Edge> onRelaxEdges(LinkedList<code_swarm.Edge> edges) {
+  public void onRelaxEdges(LivingSet<code_swarm.Edge> edges) {
+    if (relax.isParallel()) {
+      relax.relaxEdges(edges);
+      return;
+    }
     for (code_swarm.Edge edge : edges) {
       Vector2f force = new Vector2f();
 
@@ -237,7 +262,6 @@ public class PhysicsEngineCircle implements PhysicsEngine {
 //          "From " + edge.nodeFrom.name + " to " + edge.nodeTo.name + " force is " + force.length());
 //      System.out.println(edge.nodeTo.name + " speed is " + edge.nodeTo.mSpeed.length());
     }
-    return edges;
   }
 
   /**
@@ -245,10 +269,12 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    *
    * @param fNodes the nodes to which the force apply
    *
-   * @return Returns a LinkedList of file nodes which are still alive.
-   *
    */
-  public LinkedList<code_swarm.WikiNode> onRelaxNodes(LinkedList<code_swarm.WikiNode> fNodes) {
+  public void onRelaxNodes(LivingSet<code_swarm.WikiNode> fNodes) {
+    if (relax.isEnabled()) {
+      relax.relaxRepulsion(fNodes, 1.0f);
+      return;
+    }
     for (code_swarm.WikiNode fNode : fNodes) {
       Vector2f forceBetweenFiles = new Vector2f();
       Vector2f forceSummation = new Vector2f();
@@ -264,7 +290,6 @@ public class PhysicsEngineCircle implements PhysicsEngine {
       // Apply repulsive force from other files to this Node
       applyForceToSpeed(fNode, forceSummation);
     }
-    return fNodes;
   }
 
   /**
@@ -272,11 +297,13 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    *
    * @param pNodes the nodes to which the force apply
    *
-   * @return Returns a LinkedList of person nodes which are still alive.
-   *
    * @Note Position Change = Speed x Time, Time=1 usually
    */
-  public PriorityQueue<code_swarm.PersonNode> onRelaxPeople(PriorityQueue<code_swarm.PersonNode> pNodes) {
+  public void onRelaxPeople(ActivityRanking pNodes) {
+    if (relax.isEnabled()) {
+      relax.relaxRepulsion(pNodes, 1.0f);
+      return;
+    }
     for (code_swarm.PersonNode pNode : pNodes) {
       Vector2f forceBetweenPersons = new Vector2f();
       Vector2f forceSummation = new Vector2f();
@@ -293,64 +320,43 @@ public class PhysicsEngineCircle implements PhysicsEngine {
       applyForceToSpeed(pNode, forceSummation);
 
     }
-    return pNodes;
   }
 
   /**
    * Modify alive elements during the update phase.
    *
-   * @param edges the nodes to which the force apply
-   *
-   * @return Returns a LinkedList of edges which are still alive.
+   * @param edges the edges to update, this engine keeps them all alive
    *
    */
-  public LinkedList<code_swarm.Edge> onUpdateEdges(LinkedList<code_swarm.Edge> edges) {
-    LinkedList<code_swarm.Edge> stillLiving = new LinkedList<code_swarm.Edge>();
-
-    while (!edges.isEmpty()) {
-      code_swarm.Edge edge = edges.removeFirst();
-      stillLiving.addLast(edge);
-    }
-    return stillLiving;
+  public void onUpdateEdges(LivingSet<code_swarm.Edge> edges) {
   }
 
   /**
    * Modify alive elements during the update phase.
    *
-   * @param fNodes the file nodes to which the force apply
-   *
-   * @return Returns a LinkedList of nodes which are still alive.
+   * @param fNodes the file nodes to which the force apply, this engine keeps them all alive
    *
    */
-  public LinkedList<code_swarm.WikiNode> onUpdateNodes(LinkedList<code_swarm.WikiNode> fNodes) {
-    LinkedList<code_swarm.WikiNode> stillLiving = new LinkedList<code_swarm.WikiNode>();
-    while (!fNodes.isEmpty()) {
-      code_swarm.WikiNode fNode = fNodes.removeFirst();
+  public void onUpdateNodes(LivingSet<code_swarm.WikiNode> fNodes) {
+    for (int i = 0; i < fNodes.size(); i++) {
+      code_swarm.WikiNode fNode = fNodes.get(i);
       // Apply Speed to Position on nodes
       applySpeedToWikiPosition(fNode);
 
       // ensure coherent resulting position
       fNode.mPosition.set(constrain(fNode.mPosition.x, 0.0f, (float) code_swarm.width),
           constrain(fNode.mPosition.y, 0.0f, (float) code_swarm.height));
-
-      stillLiving.addLast(fNode);
     }
-    return stillLiving;
   }
 
   /**
    * Modify alive elements during the update phase.
    *
-   * @param pNodes the person nodes to which the force apply
-   *
-   * @return Returns a LinkedList of nodes which are still alive after the function call.
+   * @param pNodes the person nodes to which the force apply, this engine keeps them all alive
    *
    */
-  public PriorityQueue<code_swarm.PersonNode> onUpdatePeople(
-      PriorityQueue<code_swarm.PersonNode> pNodes) {
-    PriorityQueue<code_swarm.PersonNode> stillLiving = new PriorityQueue<code_swarm.PersonNode>();
-    while (!pNodes.isEmpty()) {
-      code_swarm.PersonNode pNode = pNodes.poll();
+  public void onUpdatePeople(ActivityRanking pNodes) {
+    for (code_swarm.PersonNode pNode : pNodes) {
       // Apply Speed to Position on nodes
       applySpeedToPosition(pNode);
 
@@ -359,12 +365,10 @@ public class PhysicsEngineCircle implements PhysicsEngine {
           constrain(pNode.mPosition.y, 0.0f, (float) code_swarm.height));
 
       // shortening life
-//      if (pNode.decay()) {
-//        stillLiving.addLast(pNode);
+//      if (!pNode.decay()) {
+//        remove pNode;
 //      }
-      stillLiving.offer(pNode);
     }
-    return stillLiving;
   }
 
   /**
@@ -372,8 +376,8 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    * @return Vector2f vector holding the starting location for a Person Node
    */
   public Vector2f pStartLocation() {
-    Vector2f vec = new Vector2f(code_swarm.width * (float) Math.random(),
-        code_swarm.height * (float) Math.random());
+    Vector2f vec = new Vector2f(code_swarm.width * layout.nextFloat(),
+        code_swarm.height * layout.nextFloat());
     return vec;
   }
 
@@ -392,8 +396,8 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    * @return Vector2f vector holding the starting velocity for a Person Node
    */
   public Vector2f pStartVelocity(float mass) {
-    Vector2f vec = new Vector2f(mass * ((float) Math.random() * 2 - 1),
-        mass * ((float) Math.random() * 2 - 1));
+    Vector2f vec = new Vector2f(mass * (layout.nextFloat() * 2 - 1),
+        mass * (layout.nextFloat() * 2 - 1));
     return vec;
   }
 
@@ -403,8 +407,8 @@ public class PhysicsEngineCircle implements PhysicsEngine {
    * @return Vector2f vector holding the starting velocity for a File Node
    */
   public Vector2f fStartVelocity(float mass) {
-    Vector2f vec = new Vector2f(mass * ((float) Math.random() * 2 - 1),
-        mass * ((float) Math.random() * 2 - 1));
+    Vector2f vec = new Vector2f(mass * (layout.nextFloat() * 2 - 1),
+        mass * (layout.nextFloat() * 2 - 1));
     return vec;
   }
 }
@@ -0,0 +1,360 @@
+import java.util.Iterator;
+import java.util.Properties;
+import javax.vecmath.Vector2f;
+
+/**
+ * @brief PhysicsEngineWiki working on packed float arrays, without allocating
+ *
+ * Same force model as PhysicsEngineWiki, but the positions, speeds and masses of the living
+ * nodes are loaded into a NodeStore at the start of every frame and all the force
+ * calculations read and write those arrays directly: no Vector2f is created while relaxing
+ * or updating, and the arrays are reused from frame to frame.
+ *
+ * @see PhysicsEngine Physical Engine Interface
+ * @see NodeStore
+ */
+public class PhysicsEngineWikiPacked implements PhysicsEngine {
+
+  private Properties cfg;
+  private code_swarm swarm;
+
+  private float FORCE_EDGE_MULTIPLIER;
+  private float FORCE_CALCULATION_RANDOMIZER;
+  private float FORCE_NODES_MULTIPLIER;
+  private float FORCE_TO_SPEED_MULTIPLIER;
+  private float SPEED_TO_POSITION_MULTIPLIER;
+
+  /** Stream of the collision jitter, drawn per pair of nodes */
+  private SimulationRandom random;
+  /** Stream of the start locations and velocities */
+  private SimulationRandom layout;
+
+  private NodeStore store = new NodeStore();
+
+  // Living elements of the current frame, by NodeStore slot, in list order
+  private code_swarm.Edge[] edges = new code_swarm.Edge[256];
+  private int[] edgeFrom = new int[256];
+  private int[] edgeTo = new int[256];
+  private int edgeCount;
+  private int[] files = new int[256];
+  private int fileCount;
+  private int[] persons = new int[256];
+  private int personCount;
+
+  /**
+   * Method for initializing parameters.
+   * @param c The code_swarm object that we are using.
+   * @param p Properties from the config file.
+   */
+  public void setup(code_swarm c, Properties p) {
+    cfg = p;
+    random = c.getPhysicsRandom();
+    layout = c.getLayoutRandom();
+    swarm = c;
+    FORCE_EDGE_MULTIPLIER = Float.parseFloat(cfg.getProperty("edgeMultiplier", "1.0"));
+    FORCE_CALCULATION_RANDOMIZER = Float
+        .parseFloat(cfg.getProperty("calculationRandomizer", "0.01"));
+    FORCE_NODES_MULTIPLIER = Float.parseFloat(cfg.getProperty("nodesMultiplier", "1.0"));
+    FORCE_TO_SPEED_MULTIPLIER = Float.parseFloat(cfg.getProperty("speedMultiplier", "1.0"));
+    SPEED_TO_POSITION_MULTIPLIER = Float.parseFloat(cfg.getProperty("drag", "0.5"));
+  }
+
+  /**
+   * Method to ensure upper and lower bounds
+   * @param value Value to check
+   * @param min Floor value
+   * @param max Ceiling value
+   * @return value if between min and max, min if < max if >
+   */
+  private float constrain(float value, float min, float max) {
+    if (value < min) {
+      return min;
+    } else if (value > max) {
+      return max;
+    }
+
+    return value;
+  }
+
+  /**
+   * Apply a force to a node, converting acceleration to speed.
+   *
+   * @param id slot of the node to which the force apply
+   * @param fx force along x
+   * @param fy force along y
+   */
+  private void applyForceToSpeed(int id, float fx, float fy) {
+    if (fx != 0 || fy != 0) {
+      float f = store.mass[id] * FORCE_TO_SPEED_MULTIPLIER;
+      store.speedX[id] += fx * f;
+      store.speedY[id] += fy * f;
+    }
+  }
+
+  /**
+   * Apply the speed of a node to its position, then the drag to its speed.
+   *
+   * @param id slot of the node
+   */
+  private void applySpeedToPosition(int id) {
+    float[] sx = store.speedX;
+    float[] sy = store.speedY;
+    float maxSpeed = store.maxSpeed[id];
+    // This block enforces a maximum absolute velocity.
+    if ((float) Math.sqrt(sx[id] * sx[id] + sy[id] * sy[id]) > maxSpeed) {
+      float magX = sx[id] / maxSpeed;
+      float magY = sy[id] / maxSpeed;
+      float div = (float) Math.sqrt(magX * magX + magY * magY);
+      sx[id] *= 1 / div;
+      sy[id] *= 1 / div;
+    }
+
+    // This block convert Speed to Position
+    store.x[id] = constrain(store.x[id] + sx[id], 0.0f, (float) code_swarm.width);
+    store.y[id] = constrain(store.y[id] + sy[id], 0.0f, (float) code_swarm.height);
+
+    // Apply drag (reduce Speed for next frame calculation)
+    sx[id] *= SPEED_TO_POSITION_MULTIPLIER;
+    sy[id] *= SPEED_TO_POSITION_MULTIPLIER;
+  }
+
+  /**
+   * Apply the repulsive force between every pair of the given nodes.
+   *
+   * @param ids slots of the nodes
+   * @param count number of slots
+   * @param speedScale factor applied to the speed once the force is applied
+   */
+  private void relaxRepulsion(int[] ids, int count, float speedScale) {
+    float[] x = store.x;
+    float[] y = store.y;
+    for (int i = 0; i < count; i++) {
+      int a = ids[i];
+      float ax = x[a];
+      float ay = y[a];
+      float fx = 0;
+      float fy = 0;
+      for (int j = 0; j < count; j++) {
+        if (j == i) {
+          continue;
+        }
+        int b = ids[j];
+        float dx = ax - x[b];
+        float dy = ay - y[b];
+        float lensq = dx * dx + dy * dy;
+        if (lensq == 0) {
+          fx += random.pairFloat(store.id[a], store.id[b], 0) * FORCE_CALCULATION_RANDOMIZER;
+          fy += random.pairFloat(store.id[a], store.id[b], 1) * FORCE_CALCULATION_RANDOMIZER;
+        } else if (lensq < 10000) {
+          fx += dx * (FORCE_NODES_MULTIPLIER / lensq);
+          fy += dy * (FORCE_NODES_MULTIPLIER / lensq);
+        }
+      }
+      applyForceToSpeed(a, fx, fy);
+      if (speedScale != 1.0f) {
+        store.speedX[a] *= speedScale;
+        store.speedY[a] *= speedScale;
+      }
+    }
+  }
+
+  /**
+   * Load the living elements of the frame into the node store.
+   */
+  public void initializeFrame() {
+    store.beginFrame();
+
+    LivingSet<code_swarm.Edge> livingEdges = swarm.getLivingEdges();
+    if (livingEdges.size() > edges.length) {
+      int len = Math.max(livingEdges.size(), edges.length * 2);
+      edges = new code_swarm.Edge[len];
+      edgeFrom = new int[len];
+      edgeTo = new int[len];
+    }
+    edgeCount = 0;
+    for (int i = 0; i < livingEdges.size(); i++) {
+      code_swarm.Edge edge = livingEdges.get(i);
+      edges[edgeCount] = edge;
+      edgeFrom[edgeCount] = store.load(edge.nodeFrom);
+      edgeTo[edgeCount] = store.load(edge.nodeTo);
+      edgeCount++;
+    }
+
+    LivingSet<code_swarm.WikiNode> livingNodes = swarm.getLivingNodes();
+    if (livingNodes.size() > files.length) {
+      files = new int[Math.max(livingNodes.size(), files.length * 2)];
+    }
+    fileCount = 0;
+    for (int i = 0; i < livingNodes.size(); i++) {
+      files[fileCount++] = store.load(livingNodes.get(i));
+    }
+
+    ActivityRanking livingPeople = swarm.getLivingPeople();
+    if (livingPeople.size() > persons.length) {
+      persons = new int[Math.max(livingPeople.size(), persons.length * 2)];
+    }
+    personCount = 0;
+    for (code_swarm.PersonNode pNode : livingPeople) {
+      persons[personCount++] = store.load(pNode);
+    }
+  }
+
+  /**
+   * Copy the results of the frame back into the nodes.
+   */
+  public void finalizeFrame() {
+    store.store();
+    // do not keep dead edges reachable
+    for (int k = 0; k < edgeCount; k++) {
+      edges[k] = null;
+    }
+  }
+
+  /**
+   * Method that allows Physics Engine to modify forces between files and people during the relax stage
+   *
+   * @param edges the edges to which the force apply (both ends)
+   */
+  public void onRelaxEdges(LivingSet<code_swarm.Edge> edges) {
+    float[] x = store.x;
+    float[] y = store.y;
+    for (int k = 0; k < edgeCount; k++) {
+      code_swarm.Edge edge = this.edges[k];
+      int from = edgeFrom[k];
+      int to = edgeTo[k];
+
+      // distance calculation
+      float dx = x[to] - x[from];
+      float dy = y[to] - y[from];
+      float distance = (float) Math.sqrt(dx * dx + dy * dy);
+      if (distance > 0) {
+        // set the vector length to the absolute value of weight
+        float scale = Math.abs(edge.weight) / distance;
+        // speed calculation (increase when distance is different from targeted len")
+        float deltaDistance = (edge.len - distance) / (distance * 3);
+        // This allows nodes to drift apart as their life decreases.
+        deltaDistance *= ((float) edge.life / edge.LIFE_INIT);
+        scale *= deltaDistance * FORCE_EDGE_MULTIPLIER;
+        if (edge.weight < 0) {
+          scale = -scale;
+        }
+        float fx = dx * scale;
+        float fy = dy * scale;
+
+        // transmit (applying) fake force projection to file and person nodes
+        applyForceToSpeed(to, fx, fy);
+        applyForceToSpeed(from, -fx, -fy);
+      }
+    }
+  }
+
+  /**
+   * Modify Speed / Position during the relax phase.
+   *
+   * @param fNodes the nodes to which the force apply
+   *
+   */
+  public void onRelaxNodes(LivingSet<code_swarm.WikiNode> fNodes) {
+    relaxRepulsion(files, fileCount, 1.0f);
+  }
+
+  /**
+   * Modify Speed / Position during the relax phase.
+   *
+   * @param pNodes the nodes to which the force apply
+   *
+   */
+  public void onRelaxPeople(ActivityRanking pNodes) {
+    relaxRepulsion(persons, personCount, 1.0f / 12);
+  }
+
+  /**
+   * Modify alive elements during the update phase.
+   *
+   * @param edges the edges to update, dead ones are removed
+   */
+  public void onUpdateEdges(LivingSet<code_swarm.Edge> edges) {
+    for (int i = 0; i < edges.size(); ) {
+      if (edges.get(i).decay()) {
+        i++;
+      } else {
+        edges.swapRemove(i);
+      }
+    }
+  }
+
+  /**
+   * Modify alive elements during the update phase.
+   *
+   * @param fNodes the file nodes to which the force apply, dead ones are removed
+   */
+  public void onUpdateNodes(LivingSet<code_swarm.WikiNode> fNodes) {
+    for (int k = 0; k < fileCount; k++) {
+      applySpeedToPosition(files[k]);
+    }
+    for (int i = 0; i < fNodes.size(); ) {
+      if (fNodes.get(i).decay()) {
+        i++;
+      } else {
+        fNodes.swapRemove(i);
+      }
+    }
+  }
+
+  /**
+   * Modify alive elements during the update phase.
+   *
+   * @param pNodes the person nodes to which the force apply, dead ones are removed
+   */
+  public void onUpdatePeople(ActivityRanking pNodes) {
+    for (int k = 0; k < personCount; k++) {
+      applySpeedToPosition(persons[k]);
+    }
+    for (Iterator<code_swarm.PersonNode> it = pNodes.iterator(); it.hasNext(); ) {
+      if (!it.next().decay()) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   *
+   * @return Vector2f vector holding the starting location for a Person Node
+   */
+  public Vector2f pStartLocation() {
+    Vector2f vec = new Vector2f(code_swarm.width * layout.nextFloat(),
+        code_swarm.height * layout.nextFloat());
+    return vec;
+  }
+
+  /**
+   *
+   * @return Vector2f vector holding the starting location for a File Node
+   */
+  public Vector2f fStartLocation() {
+    Vector2f vec = new Vector2f(code_swarm.width * (float) 0.5, code_swarm.height * (float) 0.5);
+    return vec;
+  }
+
+  /**
+   *
+   * @param mass Mass of person
+   * @return Vector2f vector holding the starting velocity for a Person Node
+   */
+  public Vector2f pStartVelocity(float mass) {
+    Vector2f vec = new Vector2f(mass * (layout.nextFloat() * 2 - 1),
+        mass * (layout.nextFloat() * 2 - 1));
+    return vec;
+  }
+
+  /**
+   *
+   * @param mass Mass of File Node
+   * @return Vector2f vector holding the starting velocity for a File Node
+   */
+  public Vector2f fStartVelocity(float mass) {
+    Vector2f vec = new Vector2f(mass * (layout.nextFloat() * 2 - 1),
+        mass * (layout.nextFloat() * 2 - 1));
+    return vec;
+  }
+}
@@ -0,0 +1,298 @@
+import java.util.Collection;
+
+/**
+ * @brief Barnes-Hut quadtree over the positions of a set of nodes.
+ *
+ * The tree is rebuilt from scratch every frame, but all of its storage (cells and bodies)
+ * lives in flat arrays that are only grown, never reallocated per frame.
+ *
+ * Every cell keeps the number of bodies below it and the sum of their positions, so that
+ * a distant cell can stand in for all of its bodies at their centroid.
+ *
+ * @see PhysicsEngineBarnesHut
+ */
+class QuadTree {
+  /** Number of bodies a leaf holds before it is split */
+  private static final int LEAF_CAPACITY = 8;
+  /** Coincident nodes would split forever, so stop at this depth */
+  private static final int MAX_DEPTH = 20;
+
+  // Bodies
+  private code_swarm.Node[] bodies = new code_swarm.Node[64];
+  private float[] bodyX = new float[64];
+  private float[] bodyY = new float[64];
+  /** Next body in the same leaf, -1 terminates */
+  private int[] bodyNext = new int[64];
+  private int bodyCount;
+
+  // Cells, a cell's four children are allocated contiguously starting at cellChild
+  private float[] cellMinX = new float[64];
+  private float[] cellMinY = new float[64];
+  private float[] cellSize = new float[64];
+  private float[] cellSumX = new float[64];
+  private float[] cellSumY = new float[64];
+  private int[] cellCount = new int[64];
+  /** First of the four children, -1 for a leaf */
+  private int[] cellChild = new int[64];
+  /** First body of a leaf, -1 for none */
+  private int[] cellHead = new int[64];
+  private int[] cellDepth = new int[64];
+  private int cellUsed;
+
+  /**
+   * Rebuild the tree over the current positions of the given nodes.
+   * @param nodes nodes to insert, iteration order defines the body index
+   */
+  public void build(Collection<? extends code_swarm.Node> nodes) {
+    int n = nodes.size();
+    ensureBodyCapacity(n);
+    bodyCount = 0;
+
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (code_swarm.Node node : nodes) {
+      float x = node.mPosition.x;
+      float y = node.mPosition.y;
+      bodies[bodyCount] = node;
+      bodyX[bodyCount] = x;
+      bodyY[bodyCount] = y;
+      bodyCount++;
+      if (x < minX) minX = x;
+      if (y < minY) minY = y;
+      if (x > maxX) maxX = x;
+      if (y > maxY) maxY = y;
+    }
+    // drop references left over from a bigger previous frame
+    for (int i = bodyCount; i < bodies.length && bodies[i] != null; i++) {
+      bodies[i] = null;
+    }
+
+    cellUsed = 0;
+    if (bodyCount == 0) {
+      return;
+    }
+    // square root cell, slightly enlarged so that max coordinates fall inside
+    float size = Math.max(maxX - minX, maxY - minY) + 1.0f;
+    newCell(minX, minY, size, 0);
+
+    for (int i = 0; i < bodyCount; i++) {
+      insert(i);
+    }
+  }
+
+  /**
+   * @return number of bodies inserted by the last build
+   */
+  public int size() {
+    return bodyCount;
+  }
+
+  /**
+   * @param i body index
+   * @return the node the body index refers to
+   */
+  public code_swarm.Node body(int i) {
+    return bodies[i];
+  }
+
+  /**
+   * Sum the repulsive force exerted on a body by every other body of the tree.
+   *
+   * Uses the same force model as PhysicsEngineWiki.calculateForceBetweenNodes: a pair at squared
+   * distance lensq contributes (A - B) * multiplier / lensq when 0 < lensq < cutoffSq, a random
+   * jitter when lensq == 0, and nothing otherwise.
+   * A cell is only replaced by its centroid when it satisfies the opening criterion
+   * (size / distance < theta) AND lies entirely within the cutoff, so the cutoff stays exact.
+   *
+   * @param self body index of the node the force applies to
+   * @param theta opening angle, 0 degenerates to the exact O(n^2) sum
+   * @param cutoffSq squared distance beyond which pairs are ignored
+   * @param multiplier force multiplier
+   * @param randomizer amplitude of the random force for colliding nodes
+   * @param random generator of the random force, drawn per pair of nodes
+   * @param out [out] out[0], out[1] receive the force
+   */
+  public void accumulateForce(int self, float theta, float cutoffSq, float multiplier,
+      float randomizer, SimulationRandom random, float[] out) {
+    out[0] = 0;
+    out[1] = 0;
+    if (cellUsed > 0) {
+      accumulate(0, self, bodyX[self], bodyY[self], theta * theta, cutoffSq, multiplier,
+          randomizer, random, out);
+    }
+  }
+
+  private void accumulate(int cell, int self, float px, float py, float thetaSq, float cutoffSq,
+      float multiplier, float randomizer, SimulationRandom random, float[] out) {
+    float minX = cellMinX[cell];
+    float minY = cellMinY[cell];
+    float size = cellSize[cell];
+    float maxX = minX + size;
+    float maxY = minY + size;
+
+    // Closest point of the cell: nothing inside can be within the cutoff
+    float nearX = px < minX ? minX - px : (px > maxX ? px - maxX : 0);
+    float nearY = py < minY ? minY - py : (py > maxY ? py - maxY : 0);
+    if (nearX * nearX + nearY * nearY >= cutoffSq) {
+      return;
+    }
+
+    if (cellChild[cell] < 0) {
+      // Leaf: exact pairwise forces
+      for (int j = cellHead[cell]; j >= 0; j = bodyNext[j]) {
+        if (j == self) {
+          continue;
+        }
+        float dx = px - bodyX[j];
+        float dy = py - bodyY[j];
+        float lensq = dx * dx + dy * dy;
+        if (lensq == 0) {
+          out[0] += random.pairFloat(bodies[self].id, bodies[j].id, 0) * randomizer;
+          out[1] += random.pairFloat(bodies[self].id, bodies[j].id, 1) * randomizer;
+        } else if (lensq < cutoffSq) {
+          out[0] += dx * multiplier / lensq;
+          out[1] += dy * multiplier / lensq;
+        }
+      }
+      return;
+    }
+
+    // Farthest corner of the cell: everything inside is within the cutoff
+    float farX = Math.max(px - minX, maxX - px);
+    float farY = Math.max(py - minY, maxY - py);
+    boolean insideCutoff = farX * farX + farY * farY < cutoffSq;
+
+    int count = cellCount[cell];
+    float dx = px - cellSumX[cell] / count;
+    float dy = py - cellSumY[cell] / count;
+    float lensq = dx * dx + dy * dy;
+    boolean containsSelf = px >= minX && px < maxX && py >= minY && py < maxY;
+
+    if (insideCutoff && !containsSelf && lensq > 0 && size * size < thetaSq * lensq) {
+      // Far field: the whole cell acts as 'count' nodes at its centroid
+      out[0] += count * dx * multiplier / lensq;
+      out[1] += count * dy * multiplier / lensq;
+      return;
+    }
+
+    int child = cellChild[cell];
+    for (int k = 0; k < 4; k++) {
+      if (cellCount[child + k] > 0) {
+        accumulate(child + k, self, px, py, thetaSq, cutoffSq, multiplier, randomizer, random,
+            out);
+      }
+    }
+  }
+
+  private void insert(int body) {
+    float x = bodyX[body];
+    float y = bodyY[body];
+    int cell = 0;
+    while (true) {
+      cellCount[cell]++;
+      cellSumX[cell] += x;
+      cellSumY[cell] += y;
+
+      if (cellChild[cell] < 0) {
+        if (cellCount[cell] <= LEAF_CAPACITY || cellDepth[cell] >= MAX_DEPTH) {
+          bodyNext[body] = cellHead[cell];
+          cellHead[cell] = body;
+          return;
+        }
+        split(cell);
+      }
+      cell = cellChild[cell] + quadrant(cell, x, y);
+    }
+  }
+
+  /**
+   * Turn a full leaf into an inner cell, pushing its bodies down one level.
+   */
+  private void split(int cell) {
+    float half = cellSize[cell] / 2;
+    float minX = cellMinX[cell];
+    float minY = cellMinY[cell];
+    int depth = cellDepth[cell] + 1;
+
+    int first = newCell(minX, minY, half, depth);
+    newCell(minX + half, minY, half, depth);
+    newCell(minX, minY + half, half, depth);
+    newCell(minX + half, minY + half, half, depth);
+    cellChild[cell] = first;
+
+    int j = cellHead[cell];
+    cellHead[cell] = -1;
+    while (j >= 0) {
+      int next = bodyNext[j];
+      int child = first + quadrant(cell, bodyX[j], bodyY[j]);
+      cellCount[child]++;
+      cellSumX[child] += bodyX[j];
+      cellSumY[child] += bodyY[j];
+      bodyNext[j] = cellHead[child];
+      cellHead[child] = j;
+      j = next;
+    }
+  }
+
+  private int quadrant(int cell, float x, float y) {
+    float half = cellSize[cell] / 2;
+    int q = 0;
+    if (x >= cellMinX[cell] + half) {
+      q += 1;
+    }
+    if (y >= cellMinY[cell] + half) {
+      q += 2;
+    }
+    return q;
+  }
+
+  private int newCell(float minX, float minY, float size, int depth) {
+    if (cellUsed == cellCount.length) {
+      int len = cellUsed * 2;
+      cellMinX = grow(cellMinX, len);
+      cellMinY = grow(cellMinY, len);
+      cellSize = grow(cellSize, len);
+      cellSumX = grow(cellSumX, len);
+      cellSumY = grow(cellSumY, len);
+      cellCount = grow(cellCount, len);
+      cellChild = grow(cellChild, len);
+      cellHead = grow(cellHead, len);
+      cellDepth = grow(cellDepth, len);
+    }
+    int c = cellUsed++;
+    cellMinX[c] = minX;
+    cellMinY[c] = minY;
+    cellSize[c] = size;
+    cellSumX[c] = 0;
+    cellSumY[c] = 0;
+    cellCount[c] = 0;
+    cellChild[c] = -1;
+    cellHead[c] = -1;
+    cellDepth[c] = depth;
+    return c;
+  }
+
+  private void ensureBodyCapacity(int n) {
+    if (n > bodyX.length) {
+      int len = Math.max(n, bodyX.length * 2);
+      code_swarm.Node[] b = new code_swarm.Node[len];
+      System.arraycopy(bodies, 0, b, 0, bodies.length);
+      bodies = b;
+      bodyX = grow(bodyX, len);
+      bodyY = grow(bodyY, len);
+      bodyNext = grow(bodyNext, len);
+    }
+  }
+
+  private static float[] grow(float[] a, int len) {
+    float[] b = new float[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private static int[] grow(int[] a, int len) {
+    int[] b = new int[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+}
@@ -0,0 +1,133 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @brief Snapshot file of the whole simulation state, to resume a render where it stopped
+ *
+ * Layout (gzip compressed, big endian):
+ * <pre>
+ *   "CSCK" magic, int version
+ *   state written by code_swarm.writeState()
+ * </pre>
+ * A snapshot is written to a temporary file first, then moved over the previous one, so a
+ * render killed while writing still leaves the previous snapshot intact.
+ *
+ * Only the simulation is saved: the display settings come from the config file again when
+ * resuming, and so do the physics parameters.
+ *
+ * A location with a run of '#' keeps every snapshot, numbered by frame like the saved frames
+ * (see FrameExporter.fileName()); latest() finds the one to resume from.
+ */
+class SimulationCheckpoint {
+
+  private static final int MAGIC = ('C' << 24) | ('S' << 16) | ('C' << 8) | 'K';
+  private static final int VERSION = 3;
+
+  /**
+   * @param location CheckpointLocation, with a run of '#' for the frame number or without
+   * @return the file to resume from: the location itself without '#', else the snapshot of
+   *         the highest frame matching the pattern; null if there is none
+   */
+  public static File latest(String location) {
+    int first = location.indexOf('#');
+    if (first < 0) {
+      File file = new File(location);
+      return file.isFile() ? file : null;
+    }
+    int last = location.lastIndexOf('#');
+    File pattern = new File(location);
+    File dir = pattern.getAbsoluteFile().getParentFile();
+    String name = pattern.getName();
+    int nameFirst = name.indexOf('#');
+    if (dir == null || nameFirst < 0 || name.length() - nameFirst != location.length() - first) {
+      // a '#' in a folder name: only the file name is numbered
+      throw new IllegalArgumentException("The run of '#' of " + location
+          + " must be in the file name");
+    }
+    String prefix = name.substring(0, nameFirst);
+    String suffix = location.substring(last + 1);
+    int digits = last - first + 1;
+    String[] names = dir.list();
+    if (names == null) {
+      return null;
+    }
+    File latest = null;
+    long latestFrame = -1;
+    for (String candidate : names) {
+      int end = candidate.length() - suffix.length();
+      if (!candidate.startsWith(prefix) || !candidate.endsWith(suffix)
+          || end - prefix.length() < digits) {
+        continue;
+      }
+      long frame = 0;
+      for (int i = prefix.length(); i < end && frame >= 0; i++) {
+        char c = candidate.charAt(i);
+        frame = c >= '0' && c <= '9' && frame < Integer.MAX_VALUE ? frame * 10 + c - '0' : -1;
+      }
+      File file = new File(dir, candidate);
+      if (frame > latestFrame && file.isFile()) {
+        latest = file;
+        latestFrame = frame;
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Save the state of a simulation.
+   * @param file file to write, replaced once the new snapshot is complete
+   * @param swarm simulation to save
+   * @throws IOException on write error
+   */
+  public static void write(File file, code_swarm swarm) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      swarm.writeState(out);
+    } finally {
+      out.close();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Restore the state of a simulation.
+   * @param file file to read
+   * @param swarm simulation to restore, set up but without any event processed yet
+   * @throws IOException on read error or if the file is not a snapshot
+   */
+  public static void read(File file, code_swarm swarm) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(file), 64 * 1024)));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a code_swarm checkpoint");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException(file + ": unsupported checkpoint version " + version);
+      }
+      swarm.readState(in);
+    } finally {
+      in.close();
+    }
+  }
+}
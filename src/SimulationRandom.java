@@ -0,0 +1,114 @@
+/**
+ * @brief Seeded random generator of a simulation subsystem, for reproducible renders
+ *
+ * Every subsystem drawing random numbers (start locations, collision jitter, colors) gets
+ * its own stream, derived from the RandomSeed of the config and the stream number: the same
+ * seed always gives the same frames, and a subsystem drawing more numbers does not shift
+ * the numbers of the others.
+ *
+ * Sequential draws use SplitMix64, a 64 bit state stepped by a constant and mixed on output:
+ * a few multiplications per number, and the whole state fits in a long, which the simulation
+ * checkpoint saves.
+ *
+ * The physics engines relax nodes in parallel, where the order of sequential draws would
+ * depend on thread scheduling. They use pairFloat() instead: a hash of a key drawn once per
+ * frame and of the ids of the two nodes, which is the same whatever the thread asking.
+ */
+class SimulationRandom {
+
+  /** Stream of the start locations and velocities of new nodes */
+  public static final int LAYOUT = 1;
+  /** Stream of the physics engines */
+  public static final int PHYSICS = 2;
+  /** Stream of the node colors */
+  public static final int COLOR = 3;
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+  private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+  private long state;
+  /** Key of the pairFloat() draws of the current frame */
+  private long frameKey;
+
+  /**
+   * @param seed seed of the simulation
+   * @param stream number of the subsystem stream
+   */
+  SimulationRandom(long seed, int stream) {
+    state = mix(seed ^ mix(stream * GOLDEN_GAMMA));
+    frameKey = 0;
+  }
+
+  /**
+   * @return next uniformly distributed long
+   */
+  public long nextLong() {
+    state += GOLDEN_GAMMA;
+    return mix(state);
+  }
+
+  /**
+   * @return next uniformly distributed float in [0, 1)
+   */
+  public float nextFloat() {
+    return (nextLong() >>> 40) * FLOAT_UNIT;
+  }
+
+  /**
+   * @return next uniformly distributed double in [0, 1)
+   */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * DOUBLE_UNIT;
+  }
+
+  /**
+   * Draw the key of the pairFloat() draws of a new frame.
+   */
+  public void nextFrame() {
+    frameKey = nextLong();
+  }
+
+  /**
+   * Random float of a pair of nodes in the current frame. Does not change the state, may be
+   * called from any thread.
+   * @param a id of the first node
+   * @param b id of the second node
+   * @param axis 0 or 1, to draw two independent numbers for the same pair
+   * @return uniformly distributed float in [0, 1)
+   */
+  public float pairFloat(int a, int b, int axis) {
+    long pair = ((long) a << 32) | (b & 0xFFFFFFFFL);
+    return (mix(frameKey + pair * GOLDEN_GAMMA + axis) >>> 40) * FLOAT_UNIT;
+  }
+
+  /**
+   * @return state, for checkpoints
+   */
+  public long getState() {
+    return state;
+  }
+
+  /**
+   * @return key of the current frame, for checkpoints
+   */
+  public long getFrameKey() {
+    return frameKey;
+  }
+
+  /**
+   * Restore the generator from a checkpoint.
+   * @param state value of getState()
+   * @param frameKey value of getFrameKey()
+   */
+  public void setState(long state, long frameKey) {
+    this.state = state;
+    this.frameKey = frameKey;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * @brief Uniform grid broadphase for short-range forces between nodes
+ *
+ * The drawing area is cut into square cells as large as the range of the force, so that
+ * every node closer than that range to a given node is found in the 3x3 block of cells
+ * around it. Nodes are bucketed with a counting sort into flat arrays which are grown on
+ * demand and then reused, rebuilding the grid allocates nothing once warmed up.
+ *
+ * Typical use from a physics engine relax phase:
+ * <pre>
+ *   grid.build(nodes);
+ *   for (int i = 0; i &lt; grid.size(); i++) {
+ *     int count = grid.gatherNeighbours(i, buffer);
+ *     for (int k = 0; k &lt; count; k++) {
+ *       ... force between grid.body(i) and buffer.get(k) ...
+ *     }
+ *   }
+ * </pre>
+ *
+ * Nodes outside of [0, width] x [0, height] are clamped into the border cells, so they are
+ * still found, only less efficiently.
+ *
+ * Neighbours come in body index order, like in a loop over all the bodies. A force summed
+ * over them is then bit for bit the all pairs sum, provided the force is exactly zero past
+ * the cell size: floating point addition is not associative, the visiting order matters.
+ */
+class SpatialGrid {
+
+  private final float cellSize;
+  private int columns;
+  private int rows;
+
+  private code_swarm.Node[] bodies = new code_swarm.Node[64];
+  private int[] bodyCell = new int[64];
+  private int bodyCount;
+
+  /** Body indexes sorted by cell */
+  private int[] sorted = new int[64];
+  /** Cell c holds sorted[cellStart[c]] to sorted[cellStart[c + 1] - 1] */
+  private int[] cellStart = new int[1];
+
+  /**
+   * @param cellSize side of a cell, at least the range of the force
+   */
+  SpatialGrid(float cellSize) {
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Bucket the given nodes by their current position over the code_swarm drawing area.
+   * @param nodes nodes to insert, iteration order defines the body index
+   */
+  public void build(Collection<? extends code_swarm.Node> nodes) {
+    columns = Math.max(1, (int) Math.ceil(code_swarm.width / cellSize));
+    rows = Math.max(1, (int) Math.ceil(code_swarm.height / cellSize));
+    int cells = columns * rows;
+    if (cellStart.length < cells + 1) {
+      cellStart = new int[cells + 1];
+    } else {
+      Arrays.fill(cellStart, 0, cells + 1, 0);
+    }
+
+    int n = nodes.size();
+    if (bodies.length < n) {
+      int len = Math.max(n, bodies.length * 2);
+      bodies = new code_swarm.Node[len];
+      bodyCell = new int[len];
+      sorted = new int[len];
+    }
+
+    bodyCount = 0;
+    for (code_swarm.Node node : nodes) {
+      int cell = cellIndex(node.mPosition.x, node.mPosition.y);
+      bodies[bodyCount] = node;
+      bodyCell[bodyCount] = cell;
+      cellStart[cell + 1]++;
+      bodyCount++;
+    }
+    // drop references left over from a bigger previous frame
+    for (int i = bodyCount; i < bodies.length && bodies[i] != null; i++) {
+      bodies[i] = null;
+    }
+
+    // counting sort: prefix sums give the start of each cell...
+    for (int c = 0; c < cells; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    // ...then fill back to front so that every cell keeps the insertion order
+    for (int i = bodyCount - 1; i >= 0; i--) {
+      sorted[--cellStart[bodyCell[i] + 1]] = i;
+    }
+    // cellStart[c + 1] now holds the start of cell c: shift it back into place
+    System.arraycopy(cellStart, 1, cellStart, 0, cells);
+    cellStart[cells] = bodyCount;
+  }
+
+  /**
+   * @return number of bodies inserted by the last build
+   */
+  public int size() {
+    return bodyCount;
+  }
+
+  /**
+   * @param i body index
+   * @return the node the body index refers to
+   */
+  public code_swarm.Node body(int i) {
+    return bodies[i];
+  }
+
+  /**
+   * Collect every body, except i itself, of the 3x3 cells around body i into a caller owned
+   * buffer, by increasing body index. Once the grid is built, this can be called from several
+   * threads at once as long as each one uses its own buffer.
+   * @param i body index
+   * @param out [out] receives the neighbours
+   * @return number of neighbours, retrieve them with out.get(k)
+   */
+  public int gatherNeighbours(int i, Neighbours out) {
+    int cell = bodyCell[i];
+    int cx = cell % columns;
+    int cy = cell / columns;
+    int count = 0;
+    for (int y = Math.max(0, cy - 1); y <= Math.min(rows - 1, cy + 1); y++) {
+      for (int x = Math.max(0, cx - 1); x <= Math.min(columns - 1, cx + 1); x++) {
+        int c = y * columns + x;
+        int end = cellStart[c + 1];
+        out.ensureCapacity(count, count + end - cellStart[c]);
+        int[] indexes = out.indexes;
+        for (int k = cellStart[c]; k < end; k++) {
+          int j = sorted[k];
+          if (j != i) {
+            indexes[count++] = j;
+          }
+        }
+      }
+    }
+    // each cell is in index order already, but the 9 cells are not
+    Arrays.sort(out.indexes, 0, count);
+    for (int k = 0; k < count; k++) {
+      out.nodes[k] = bodies[out.indexes[k]];
+    }
+    return count;
+  }
+
+  /**
+   * Reusable buffer of neighbours, grown on demand.
+   */
+  static class Neighbours {
+
+    private code_swarm.Node[] nodes = new code_swarm.Node[64];
+    private int[] indexes = new int[64];
+
+    /**
+     * @param k index between 0 and the last gatherNeighbours() result
+     * @return k-th neighbour
+     */
+    public code_swarm.Node get(int k) {
+      return nodes[k];
+    }
+
+    private void ensureCapacity(int used, int needed) {
+      if (needed > indexes.length) {
+        int[] grown = new int[Math.max(indexes.length * 2, needed)];
+        System.arraycopy(indexes, 0, grown, 0, used);
+        indexes = grown;
+        nodes = new code_swarm.Node[grown.length];
+      }
+    }
+  }
+
+  private int cellIndex(float x, float y) {
+    int cx = (int) (x / cellSize);
+    int cy = (int) (y / cellSize);
+    if (cx < 0 || x != x) {
+      cx = 0;
+    } else if (cx >= columns) {
+      cx = columns - 1;
+    }
+    if (cy < 0 || y != y) {
+      cy = 0;
+    } else if (cy >= rows) {
+      cy = rows - 1;
+    }
+    return cy * columns + cx;
+  }
+}
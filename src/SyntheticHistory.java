@@ -0,0 +1,308 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * @brief Generates event histories of any size, to test code_swarm at scale
+ *
+ * The history is made of commits: a commit is one author touching a few files at the same
+ * date, each file being an event. Authors and files are drawn from Zipf distributions, the
+ * author or file of rank k being drawn with a probability proportional to 1 / k^skew: a few
+ * of them get most of the activity, like in real repositories.
+ *
+ * Commits are spread over the time span in bursts: with probability Burstiness, a commit
+ * follows the previous one within about BurstHours, instead of falling anywhere in the time
+ * span. 0 spreads the commits evenly, close to 1 packs them into a few intense periods.
+ *
+ * The output is sorted by date, so IsInputSorted=true can be set when rendering it. Its
+ * format comes from the extension: file_events XML, or a BinaryEventLog for ".events".
+ * With the same settings and RandomSeed, the same history is generated.
+ * <pre>
+ *   java SyntheticHistory big.events Events=10000000 Files=200000 Authors=5000
+ * </pre>
+ */
+public class SyntheticHistory {
+
+  public static final String EVENTS_KEY = "Events";
+  public static final String AUTHORS_KEY = "Authors";
+  public static final String FILES_KEY = "Files";
+  public static final String AUTHOR_SKEW_KEY = "AuthorSkew";
+  public static final String FILE_SKEW_KEY = "FileSkew";
+  public static final String COMMIT_SIZE_KEY = "CommitSize";
+  public static final String BURSTINESS_KEY = "Burstiness";
+  public static final String BURST_HOURS_KEY = "BurstHours";
+  public static final String FIRST_DATE_KEY = "FirstDate";
+  public static final String DAYS_KEY = "Days";
+  public static final String MEAN_WEIGHT_KEY = "MeanWeight";
+
+  /** Stream of the commit sizes */
+  private static final int SIZE_STREAM = 1;
+  /** Stream of the commit dates */
+  private static final int DATE_STREAM = 2;
+  /** Stream of the authors, files and weights */
+  private static final int EVENT_STREAM = 3;
+
+  private static final long HOUR = 3600L * 1000;
+  private static final long DAY = 24 * HOUR;
+
+  /**
+   * Inverse cumulative distribution of a Zipf law over ranks 0 to n - 1.
+   */
+  private static class Zipf {
+    private final double[] cumulative;
+
+    /**
+     * @param n number of ranks
+     * @param skew exponent, 0 for a uniform distribution
+     */
+    Zipf(int n, double skew) {
+      cumulative = new double[n];
+      double sum = 0;
+      for (int k = 0; k < n; k++) {
+        sum += 1 / Math.pow(k + 1, skew);
+        cumulative[k] = sum;
+      }
+    }
+
+    /**
+     * @return rank drawn with the stream
+     */
+    int next(SimulationRandom random) {
+      double u = random.nextDouble() * cumulative[cumulative.length - 1];
+      int k = Arrays.binarySearch(cumulative, u);
+      // not found: -(insertion point) - 1, the first rank whose cumulative exceeds u
+      return Math.min(k < 0 ? -k - 1 : k + 1, cumulative.length - 1);
+    }
+  }
+
+  /**
+   * Writes file_events XML, in the layout of the bundled data files.
+   */
+  private static class XmlWriter implements EventStreamReader.Handler {
+    private final Writer out;
+
+    XmlWriter(File file) throws IOException {
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"),
+          1 << 16);
+      out.write("<?xml version='1.0' encoding='utf-8'?>\n<file_events>\n");
+    }
+
+    /**
+     * The generated names are plain ASCII letters, digits, '/' and '.', no escaping needed.
+     */
+    public void event(String filename, long date, String author, int weight) throws IOException {
+      out.write("  <event filename=\"");
+      out.write(filename);
+      out.write("\" date=\"");
+      out.write(Long.toString(date));
+      out.write("\" author=\"");
+      out.write(author);
+      out.write("\" weight=\"");
+      out.write(Integer.toString(weight));
+      out.write("\"/>\n");
+    }
+
+    void close() throws IOException {
+      out.write("</file_events>\n");
+      out.close();
+    }
+  }
+
+  private int events;
+  private int authors;
+  private int files;
+  private double authorSkew;
+  private double fileSkew;
+  private double commitSize;
+  private double burstiness;
+  private double burstHours;
+  private long firstDate;
+  private long span;
+  private double meanWeight;
+  private long seed;
+
+  /**
+   * @param settings Key=Value settings, the defaults generate a million events
+   * @throws IllegalArgumentException on a malformed setting
+   */
+  SyntheticHistory(Properties settings) {
+    events = Integer.parseInt(settings.getProperty(EVENTS_KEY, "1000000"));
+    authors = Math.max(1, Integer.parseInt(settings.getProperty(AUTHORS_KEY, "1000")));
+    files = Math.max(1, Integer.parseInt(settings.getProperty(FILES_KEY, "100000")));
+    authorSkew = Double.parseDouble(settings.getProperty(AUTHOR_SKEW_KEY, "1.0"));
+    fileSkew = Double.parseDouble(settings.getProperty(FILE_SKEW_KEY, "1.0"));
+    commitSize = Math.max(1, Double.parseDouble(settings.getProperty(COMMIT_SIZE_KEY, "4")));
+    burstiness = Double.parseDouble(settings.getProperty(BURSTINESS_KEY, "0.5"));
+    if (burstiness < 0 || burstiness >= 1) {
+      throw new IllegalArgumentException(BURSTINESS_KEY + " must be in [0, 1)");
+    }
+    burstHours = Double.parseDouble(settings.getProperty(BURST_HOURS_KEY, "2"));
+    try {
+      firstDate = new SimpleDateFormat("yyyy-MM-dd")
+          .parse(settings.getProperty(FIRST_DATE_KEY, "2008-01-01")).getTime();
+    } catch (ParseException e) {
+      throw new IllegalArgumentException(FIRST_DATE_KEY + " must be a yyyy-MM-dd date");
+    }
+    span = Math.max(1, (long) (Double.parseDouble(settings.getProperty(DAYS_KEY, "3650")) * DAY));
+    meanWeight = Math.max(1, Double.parseDouble(settings.getProperty(MEAN_WEIGHT_KEY, "20")));
+    seed = Long.parseLong(settings.getProperty(CodeSwarmConfig.RANDOM_SEED_KEY, "1"));
+  }
+
+  /**
+   * @return number of files of the next commit, geometric with mean commitSize
+   */
+  private int nextCommitSize(SimulationRandom random) {
+    if (commitSize <= 1) {
+      return 1;
+    }
+    double u = 1 - random.nextDouble();
+    return 1 + (int) (Math.log(u) / Math.log(1 - 1 / commitSize));
+  }
+
+  /**
+   * @return sorted dates of the commits
+   */
+  private long[] commitDates(int commits) {
+    SimulationRandom random = new SimulationRandom(seed, DATE_STREAM);
+    long[] dates = new long[commits];
+    long previous = 0;
+    for (int i = 0; i < commits; i++) {
+      long date;
+      if (i > 0 && random.nextDouble() < burstiness) {
+        // exponential gap of mean burstHours after the previous commit
+        date = previous + (long) (-Math.log(1 - random.nextDouble()) * burstHours * HOUR);
+        date = Math.min(date, span - 1);
+      } else {
+        date = (long) (random.nextDouble() * span);
+      }
+      dates[i] = date;
+      previous = date;
+    }
+    Arrays.sort(dates);
+    return dates;
+  }
+
+  /**
+   * @param rank rank of the file in the Zipf law
+   * @return path of the file, spread over the src1 to src9 and doc folders that
+   *         data/sample.config colors
+   */
+  private static String fileName(int rank) {
+    int folder = rank % 10;
+    int module = rank / 10 % 100;
+    if (folder == 0) {
+      return "doc/module" + module + "/page" + rank + ".txt";
+    }
+    return "src" + folder + "/module" + module + "/File" + rank + ".java";
+  }
+
+  /**
+   * Generate the history.
+   * @param handler receiver of the events, in date order
+   * @return number of commits
+   */
+  int generate(EventStreamReader.Handler handler) throws IOException, InterruptedException {
+    // first pass on the size stream to count the commits, the second one replays it
+    SimulationRandom sizes = new SimulationRandom(seed, SIZE_STREAM);
+    int commits = 0;
+    for (long total = 0; total < events; total += nextCommitSize(sizes)) {
+      commits++;
+    }
+    long[] dates = commitDates(commits);
+
+    String[] authorNames = new String[authors];
+    for (int i = 0; i < authors; i++) {
+      authorNames[i] = "author" + i;
+    }
+    String[] fileNames = new String[files];
+    Zipf authorLaw = new Zipf(authors, authorSkew);
+    Zipf fileLaw = new Zipf(files, fileSkew);
+
+    sizes = new SimulationRandom(seed, SIZE_STREAM);
+    SimulationRandom random = new SimulationRandom(seed, EVENT_STREAM);
+    int remaining = events;
+    for (int c = 0; c < commits; c++) {
+      long date = firstDate + dates[c];
+      String author = authorNames[authorLaw.next(random)];
+      int size = Math.min(nextCommitSize(sizes), remaining);
+      for (int i = 0; i < size; i++) {
+        int f = fileLaw.next(random);
+        if (fileNames[f] == null) {
+          fileNames[f] = fileName(f);
+        }
+        int weight = 1 + (int) (-Math.log(1 - random.nextDouble()) * (meanWeight - 1));
+        handler.event(fileNames[f], date, author, weight);
+      }
+      remaining -= size;
+    }
+    return commits;
+  }
+
+  /**
+   * @param args : output file, optionally followed by Key=Value settings
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: java SyntheticHistory <output.xml|output"
+          + BinaryEventLog.EXTENSION + "> [Key=Value...]");
+      System.err.println("Settings: " + EVENTS_KEY + ", " + AUTHORS_KEY + ", " + FILES_KEY
+          + ", " + AUTHOR_SKEW_KEY + ", " + FILE_SKEW_KEY + ", " + COMMIT_SIZE_KEY + ", "
+          + BURSTINESS_KEY + ", " + BURST_HOURS_KEY + ", " + FIRST_DATE_KEY + ", " + DAYS_KEY
+          + ", " + MEAN_WEIGHT_KEY + ", " + CodeSwarmConfig.RANDOM_SEED_KEY);
+      System.exit(1);
+    }
+
+    File output = new File(args[0]);
+    SyntheticHistory generator;
+    try {
+      Properties settings = new Properties();
+      for (int i = 1; i < args.length; i++) {
+        int eq = args[i].indexOf('=');
+        if (eq <= 0) {
+          throw new IllegalArgumentException("Key=Value expected instead of '" + args[i] + "'");
+        }
+        settings.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+      }
+      generator = new SyntheticHistory(settings);
+    } catch (IllegalArgumentException e) {
+      // NumberFormatException included
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    long start = System.nanoTime();
+    int commits;
+    try {
+      if (output.getName().endsWith(BinaryEventLog.EXTENSION)) {
+        BinaryEventLog.Writer writer = new BinaryEventLog.Writer();
+        commits = generator.generate(writer);
+        writer.writeTo(output);
+      } else {
+        XmlWriter writer = new XmlWriter(output);
+        try {
+          commits = generator.generate(writer);
+        } finally {
+          writer.close();
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Could not write " + output + ": " + e.getMessage());
+      System.exit(1);
+      return;
+    } catch (InterruptedException e) {
+      System.exit(1);
+      return;
+    }
+    System.out.println(generator.events + " events in " + commits + " commits, "
+        + output.length() / 1024 + " KB written to " + output + " in "
+        + String.format("%.1f", (System.nanoTime() - start) / 1e9) + " s");
+  }
+}
@@ -0,0 +1,161 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @brief Streams the rendered frames as uncompressed video, to a file or to stdout
+ *
+ * Two formats:
+ * <ul>
+ * <li>y4m: YUV4MPEG2, 4:2:0 BT.601 studio range, understood by ffmpeg, x264, mplayer...</li>
+ * <li>rgb: headerless packed 24 bit RGB, e.g. ffmpeg -f rawvideo -pix_fmt rgb24 -s WxH</li>
+ * </ul>
+ * A frame is converted into the same direct buffer every time and written to the channel in
+ * one go: nothing is allocated per frame and the output is a single file, or a pipe:
+ * <pre>
+ *   VideoOutput=-
+ *   java code_swarm my.config | ffmpeg -i - -c:v libx264 swarm.mp4
+ * </pre>
+ * When writing to stdout, System.out is redirected to stderr so that messages do not end up
+ * in the video stream.
+ */
+class VideoSink {
+
+  /** Location meaning the standard output */
+  public static final String STDOUT = "-";
+
+  private final FileOutputStream out;
+  private final FileChannel channel;
+  private final ByteBuffer frame;
+  private final boolean y4m;
+  private final int width;
+  private final int height;
+  private final byte[] header;
+
+  /**
+   * @param location file to write, or "-" for stdout
+   * @param format "y4m" or "rgb", when null rgb for a .rgb location and y4m otherwise
+   * @param width width of the frames
+   * @param height height of the frames
+   * @param frameRate frames per second, written in the y4m header
+   * @throws IOException if the file cannot be created
+   */
+  VideoSink(String location, String format, int width, int height, int frameRate)
+      throws IOException {
+    if (format == null) {
+      format = location.toLowerCase().endsWith(".rgb") ? "rgb" : "y4m";
+    }
+    if (format.equalsIgnoreCase("y4m")) {
+      y4m = true;
+    } else if (format.equalsIgnoreCase("rgb")) {
+      y4m = false;
+    } else {
+      throw new IOException("Unknown video format '" + format + "', expected y4m or rgb");
+    }
+    this.width = width;
+    this.height = height;
+
+    if (location.equals(STDOUT)) {
+      out = new FileOutputStream(FileDescriptor.out);
+      System.setOut(System.err);
+    } else {
+      out = new FileOutputStream(location);
+    }
+    channel = out.getChannel();
+
+    if (y4m) {
+      header = "FRAME\n".getBytes("US-ASCII");
+      int chromaSize = ((width + 1) / 2) * ((height + 1) / 2);
+      frame = ByteBuffer.allocateDirect(header.length + width * height + 2 * chromaSize);
+      String streamHeader = "YUV4MPEG2 W" + width + " H" + height + " F" + frameRate
+          + ":1 Ip A1:1 C420jpeg\n";
+      write(ByteBuffer.wrap(streamHeader.getBytes("US-ASCII")));
+    } else {
+      header = new byte[0];
+      frame = ByteBuffer.allocateDirect(width * height * 3);
+    }
+  }
+
+  /**
+   * Append a frame to the stream.
+   * @param pixels ARGB pixels of the frame, width * height of them
+   * @throws IOException on write error, e.g. when the reading end of the pipe is closed
+   */
+  public void write(int[] pixels) throws IOException {
+    frame.clear();
+    frame.put(header);
+    if (y4m) {
+      putYuv420(pixels);
+    } else {
+      putRgb(pixels);
+    }
+    frame.flip();
+    write(frame);
+  }
+
+  private void putRgb(int[] pixels) {
+    int n = width * height;
+    for (int i = 0; i < n; i++) {
+      int c = pixels[i];
+      frame.put((byte) (c >> 16));
+      frame.put((byte) (c >> 8));
+      frame.put((byte) c);
+    }
+  }
+
+  /**
+   * Y plane at full resolution, then U and V planes from the mean of each 2x2 block.
+   */
+  private void putYuv420(int[] pixels) {
+    int n = width * height;
+    for (int i = 0; i < n; i++) {
+      int c = pixels[i];
+      int r = (c >> 16) & 0xFF;
+      int g = (c >> 8) & 0xFF;
+      int b = c & 0xFF;
+      frame.put((byte) (((16829 * r + 33039 * g + 6416 * b + 32768) >> 16) + 16));
+    }
+
+    int chromaWidth = (width + 1) / 2;
+    int chromaHeight = (height + 1) / 2;
+    int uStart = frame.position();
+    int vStart = uStart + chromaWidth * chromaHeight;
+    for (int cy = 0; cy < chromaHeight; cy++) {
+      int y0 = 2 * cy;
+      int y1 = Math.min(y0 + 1, height - 1);
+      for (int cx = 0; cx < chromaWidth; cx++) {
+        int x0 = 2 * cx;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int c0 = pixels[y0 * width + x0];
+        int c1 = pixels[y0 * width + x1];
+        int c2 = pixels[y1 * width + x0];
+        int c3 = pixels[y1 * width + x1];
+        int r = (((c0 >> 16) & 0xFF) + ((c1 >> 16) & 0xFF) + ((c2 >> 16) & 0xFF)
+            + ((c3 >> 16) & 0xFF) + 2) >> 2;
+        int g = (((c0 >> 8) & 0xFF) + ((c1 >> 8) & 0xFF) + ((c2 >> 8) & 0xFF)
+            + ((c3 >> 8) & 0xFF) + 2) >> 2;
+        int b = ((c0 & 0xFF) + (c1 & 0xFF) + (c2 & 0xFF) + (c3 & 0xFF) + 2) >> 2;
+        int k = cy * chromaWidth + cx;
+        frame.put(uStart + k, (byte) (((-9714 * r - 19070 * g + 28784 * b + 32768) >> 16) + 128));
+        frame.put(vStart + k, (byte) (((28784 * r - 24103 * g - 4681 * b + 32768) >> 16) + 128));
+      }
+    }
+    frame.position(vStart + chromaWidth * chromaHeight);
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Flush and close the stream.
+   * @throws IOException on write error
+   */
+  public void close() throws IOException {
+    out.close();
+  }
+}
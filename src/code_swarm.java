@@ -1,32 +1,27 @@
 import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.text.DateFormat;
-import java.util.Comparator;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
-import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.vecmath.Vector2f;
-import org.codeswarm.dependencies.sun.tools.javac.util.Pair;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 import processing.core.PApplet;
 import processing.core.PFont;
 import processing.core.PImage;
@@ -50,26 +45,46 @@ public class code_swarm extends PApplet {
   // Data storage
   BlockingQueue<Event> eventsQueue;
   boolean isInputSorted = false;
-  protected Map<String, WikiNode> nodes;
-  protected Map<Pair<WikiNode, PersonNode>, Edge> edges;
-  protected Map<String, PersonNode> people;
-
-  PriorityQueue<PersonNode> livingPeople = new PriorityQueue<PersonNode>(500, new Comparator<PersonNode>() {
-    public int compare(PersonNode p1, PersonNode p2) {
-      return p2.getChangeWords() - p1.getChangeWords();
-    }
-  });
-
-
-  LinkedList<Edge> livingEdges = new LinkedList<Edge>();
-  LinkedList<WikiNode> livingNodes = new LinkedList<WikiNode>();
-
-  LinkedList<ColorBins> history;
-  LinkedList<Integer> peopleHistory;
-  LinkedList<Integer> totalWordsHistory;
+  int sortRunSize = 100000;
+  /** File nodes by filename id */
+  protected NodeRegistry<WikiNode> nodes;
+  protected EdgeTable edges;
+  /** Person nodes by author id */
+  protected NodeRegistry<PersonNode> people;
+  /** Ids of the filenames and authors, filled by the loader thread */
+  NameTable fileNames;
+  NameTable authorNames;
+
+  ActivityRanking livingPeople;
+
+
+  LivingSet<Edge> livingEdges = new LivingSet<Edge>();
+  LivingSet<WikiNode> livingNodes = new LivingSet<WikiNode>();
+
+  /** Frames in the histories, the width of the graphs in pixels */
+  private static final int HISTORY_FRAMES = 320;
+  private static final int PEOPLE_HISTORY_FRAMES = 500;
+  private static final int TOTAL_WORDS_HISTORY_FRAMES = 500;
+
+  ColorHistory history;
+  IntRing peopleHistory;
+  /** Total words at the end of each frame */
+  IntRing totalWordsHistory;
+  /** Lowest and highest total words of each frame, from its start to its end */
+  IntRing totalWordsMin;
+  IntRing totalWordsMax;
   private int totalWords = 0;
 
-  boolean finishedLoading = false;
+  /** Set by the loader thread once every event has been put into eventsQueue */
+  volatile boolean finishedLoading = false;
+  /** Put into eventsQueue by the loader after the last event */
+  final Event endOfEvents = new Event(Long.MAX_VALUE, null, -1, null, -1, 0);
+  /** Events taken from eventsQueue, not processed yet */
+  private ArrayDeque<Event> pendingEvents = new ArrayDeque<Event>();
+  /** True once endOfEvents has been taken from eventsQueue */
+  private boolean reachedEndOfEvents = false;
+  /** Number of events processed by update(), including the ones before a resumed checkpoint */
+  private int eventsProcessed = 0;
 
   // Temporary variables
   Event currentEvent;
@@ -77,6 +92,8 @@ public class code_swarm extends PApplet {
   Date prevDate;
   WikiNode prevNode;
   int maxTouches;
+  /** Id given to the next node created, nodes of all kinds share the same dense ids */
+  private int nextNodeId = 0;
 
   // Graphics objects
   PFont font;
@@ -99,6 +116,19 @@ public class code_swarm extends PApplet {
   boolean showHelp = false;
   boolean takeSnapshots = false;
   boolean showDebug = false;
+  /** Drawn by HeadlessRender: no window, no animation thread, no frame rate cap */
+  boolean offscreen = false;
+  /** Size of the saved frames, set by size() in setup() */
+  private int frameWidth;
+  private int frameHeight;
+  /** Only run the simulation, without drawing anything: fast-forward to checkpoints */
+  boolean simulateOnly = false;
+  /** Frames before startFrame, or dated before startDate, are simulated but not drawn */
+  private boolean fastForwarding = false;
+  private int startFrame = 0;
+  private Date startDate = null;
+  /** While fast-forwarding, relax the forces every fastForwardRelaxInterval frames only */
+  private int fastForwardRelaxInterval = 1;
   boolean drawNamesSharp = false;
   boolean drawNamesHalos = false;
   boolean drawFilesSharp = false;
@@ -110,6 +140,11 @@ public class code_swarm extends PApplet {
 
   // Color mapper
   ColorAssigner colorAssigner;
+
+  // Seeded random streams, so that a seed always renders the same frames
+  private SimulationRandom layoutRandom;
+  private SimulationRandom physicsRandom;
+  private SimulationRandom colorRandom;
   int currentColor;
 
   // Edge Length
@@ -130,6 +165,7 @@ public class code_swarm extends PApplet {
   private float PERSON_MASS = 10.0f;
 
   private int HIGHLIGHT_PCT = 5;
+  private int MOST_ACTIVE_COUNT = 3;
 
   // Physics engine configuration
   String physicsEngineConfigDir;
@@ -148,11 +184,28 @@ public class code_swarm extends PApplet {
   DateFormat formatter = DateFormat.getDateInstance();
 
   protected static CodeSwarmConfig cfg;
-  private long lastDrawDuration = 0;
+  /** Number of frames the phase time percentiles are computed on */
+  private static final int PROFILE_WINDOW = 120;
+  /** Times of the phases of draw() and update() */
+  private FrameProfiler profiler = new FrameProfiler(PROFILE_WINDOW);
+  /** Percentiles shown by drawProfile(), and their times */
+  private static final double[] PROFILE_FRACTIONS = {0.5, 0.95, 1};
+  private final double[] profileMillis = new double[PROFILE_FRACTIONS.length];
+  /** Heap allocated by the physics engine calls of update() */
+  private AllocationCounter physicsAllocations = new AllocationCounter();
   private String loadingMessage = "Reading input file";
   protected static int width = 0;
   protected static int height = 0;
-  private int maxFramesSaved;
+  /** Writes the frames when takeSnapshots is set */
+  private FrameExporter frameExporter = null;
+  /** Streams the frames when VideoOutput is set */
+  private VideoSink videoSink = null;
+  /** Simulation snapshot, written every checkpointInterval frames, a run of '#' is replaced
+   *  by the frame number */
+  private String checkpointLocation;
+  private int checkpointInterval = 0;
+  /** Stop after this frame, 0 to run until the end of the history */
+  private int lastFrame = 0;
 
   protected int maxBackgroundThreads;
   protected ExecutorService backgroundExecutor;
@@ -190,11 +243,31 @@ public class code_swarm extends PApplet {
         TimeUnit.NANOSECONDS, new ArrayBlockingQueue<Runnable>(4 * maxBackgroundThreads),
         new ThreadPoolExecutor.CallerRunsPolicy());
 
-    if (cfg.getBooleanProperty(CodeSwarmConfig.USE_OPEN_GL, false)) {
+    if (offscreen) {
+      if (cfg.getBooleanProperty(CodeSwarmConfig.USE_OPEN_GL, false)) {
+        // stderr, stdout may be the video output
+        System.err.println("OpenGL needs a display, rendering offscreen with Java2D");
+      }
+      size(width, height);
+    } else if (cfg.getBooleanProperty(CodeSwarmConfig.USE_OPEN_GL, false)) {
       size(width, height, OPENGL);
     } else {
       size(width, height);
     }
+    frameWidth = width;
+    frameHeight = height;
+
+    // Opened early: once it takes stdout, messages go to stderr
+    String videoOutput = cfg.getStringProperty(CodeSwarmConfig.VIDEO_OUTPUT_KEY);
+    if (videoOutput != null && videoOutput.length() > 0) {
+      try {
+        videoSink = new VideoSink(videoOutput,
+            cfg.getStringProperty(CodeSwarmConfig.VIDEO_FORMAT_KEY), width, height, FRAME_RATE);
+      } catch (IOException e) {
+        System.err.println("Could not open video output " + videoOutput + ": " + e.getMessage());
+        System.exit(1);
+      }
+    }
 
     if (cfg.getBooleanProperty(CodeSwarmConfig.SHOW_LEGEND, false)) {
       showLegend = true;
@@ -319,6 +392,11 @@ public class code_swarm extends PApplet {
       HIGHLIGHT_PCT = 5;
     }
 
+    MOST_ACTIVE_COUNT = cfg.getIntProperty(CodeSwarmConfig.MOST_ACTIVE_COUNT_KEY, 3);
+    if (MOST_ACTIVE_COUNT < 0) {
+      MOST_ACTIVE_COUNT = 3;
+    }
+
     UPDATE_DELTA = cfg.getIntProperty(CodeSwarmConfig.MSEC_PER_FRAME_KEY, -1);
     if (UPDATE_DELTA == -1) {
       int framesperday = cfg.getIntProperty(CodeSwarmConfig.FRAMES_PER_DAY_KEY, 4);
@@ -332,6 +410,22 @@ public class code_swarm extends PApplet {
     }
 
     isInputSorted = cfg.getBooleanProperty(CodeSwarmConfig.IS_INPUT_SORTED_KEY, false);
+    sortRunSize = cfg.getIntProperty(CodeSwarmConfig.SORT_RUN_SIZE_KEY, 100000);
+    if (sortRunSize <= 0) {
+      sortRunSize = 100000;
+    }
+
+    long seed;
+    if (cfg.getStringProperty(CodeSwarmConfig.RANDOM_SEED_KEY) != null) {
+      seed = cfg.getLongProperty(CodeSwarmConfig.RANDOM_SEED_KEY);
+    } else {
+      seed = System.nanoTime();
+      System.out.println("Random seed: " + seed + " (set " + CodeSwarmConfig.RANDOM_SEED_KEY
+          + "=" + seed + " to render the same frames again)");
+    }
+    layoutRandom = new SimulationRandom(seed, SimulationRandom.LAYOUT);
+    physicsRandom = new SimulationRandom(seed, SimulationRandom.PHYSICS);
+    colorRandom = new SimulationRandom(seed, SimulationRandom.COLOR);
 
     /**
      * This section loads config files and calls the setup method for all physics engines.
@@ -396,37 +490,120 @@ public class code_swarm extends PApplet {
     }
 
     smooth();
-    frameRate(FRAME_RATE);
+    if (!offscreen) {
+      frameRate(FRAME_RATE);
+    }
 
     // init data structures
-    nodes = new HashMap<String, WikiNode>();
-    edges = new HashMap<Pair<WikiNode, PersonNode>, Edge>();
-    people = new HashMap<String, PersonNode>();
-    history = new LinkedList<ColorBins>();
-    peopleHistory = new LinkedList<Integer>();
-    totalWordsHistory = new LinkedList<Integer>();
-
-    if (isInputSorted) {
-      //If the input is sorted, we only need to store the next few events
-      eventsQueue = new ArrayBlockingQueue<Event>(5000);
-    } else {
-      //Otherwise we need to store them all at once in a data structure that will sort them
-      eventsQueue = new PriorityBlockingQueue<Event>();
-    }
+    nodes = new NodeRegistry<WikiNode>();
+    edges = new EdgeTable();
+    people = new NodeRegistry<PersonNode>();
+    fileNames = new NameTable();
+    authorNames = new NameTable();
+    livingPeople = new ActivityRanking(MOST_ACTIVE_COUNT);
+    history = new ColorHistory(HISTORY_FRAMES);
+    peopleHistory = new IntRing(PEOPLE_HISTORY_FRAMES);
+    totalWordsHistory = new IntRing(TOTAL_WORDS_HISTORY_FRAMES);
+    totalWordsMin = new IntRing(TOTAL_WORDS_HISTORY_FRAMES);
+    totalWordsMax = new IntRing(TOTAL_WORDS_HISTORY_FRAMES);
+
+    // Events reach the queue sorted (unsorted input goes through an external sort first),
+    // so we only need to store the next few events
+    eventsQueue = new ArrayBlockingQueue<Event>(5000);
 
     // Init color map
     initColors();
 
+    checkpointLocation = cfg.getStringProperty(CodeSwarmConfig.CHECKPOINT_LOCATION_KEY,
+        "checkpoints/code_swarm.ckpt");
+    checkpointInterval = cfg.getIntProperty(CodeSwarmConfig.CHECKPOINT_INTERVAL_KEY, 0);
+    lastFrame = cfg.getIntProperty(CodeSwarmConfig.LAST_FRAME_KEY, 0);
+    boolean resumed = false;
+    if (cfg.getBooleanProperty(CodeSwarmConfig.RESUME_KEY, false)) {
+      File checkpointFile = null;
+      try {
+        checkpointFile = SimulationCheckpoint.latest(checkpointLocation);
+      } catch (IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        System.exit(1);
+      }
+      if (checkpointFile == null) {
+        System.err.println("No checkpoint " + checkpointLocation + " to resume from");
+        System.exit(1);
+      }
+      try {
+        SimulationCheckpoint.read(checkpointFile, this);
+      } catch (IOException e) {
+        System.err.println("Could not resume from " + checkpointFile + ": " + e.getMessage());
+        System.exit(1);
+      }
+      resumed = true;
+      System.out.println("Resuming from " + checkpointFile + " after frame " + frameCount + ", "
+          + eventsProcessed + " events processed");
+    }
+
     loadRepEvents(cfg.getStringProperty(
         CodeSwarmConfig.INPUT_FILE_KEY)); // event formatted (this is the standard)
-    while (!finishedLoading && eventsQueue.isEmpty()) {
-      ;
+    if (!resumed) {
+      Event firstEvent = peekEvent();
+      if (firstEvent == null) {
+        System.out.println("No event to show in "
+            + cfg.getStringProperty(CodeSwarmConfig.INPUT_FILE_KEY));
+        System.exit(1);
+      }
+      prevDate = firstEvent.date;
     }
-    prevDate = eventsQueue.peek().date;
 
     SCREENSHOT_FILE = cfg.getStringProperty(CodeSwarmConfig.SNAPSHOT_LOCATION_KEY);
 
-    maxFramesSaved = (int) Math.pow(10, SCREENSHOT_FILE.replaceAll("[^#]", "").length());
+    if (takeSnapshots) {
+      int encoders = cfg.getIntProperty(CodeSwarmConfig.SNAPSHOT_ENCODERS_KEY,
+          Runtime.getRuntime().availableProcessors());
+      if (encoders <= 0) {
+        encoders = Runtime.getRuntime().availableProcessors();
+      }
+      int queueSize = cfg.getIntProperty(CodeSwarmConfig.SNAPSHOT_QUEUE_SIZE_KEY, 2 * encoders);
+      if (queueSize <= 0) {
+        queueSize = 2 * encoders;
+      }
+      try {
+        frameExporter = new FrameExporter(SCREENSHOT_FILE, width, height, encoders, queueSize);
+      } catch (IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    String profileLog = cfg.getStringProperty(CodeSwarmConfig.PROFILE_LOG_KEY);
+    if (profileLog != null && profileLog.length() > 0) {
+      try {
+        profiler.openLog(profileLog);
+      } catch (IOException e) {
+        System.out.println("Could not create profile log " + profileLog + ": " + e.getMessage());
+        System.exit(1);
+      }
+    }
+
+    startFrame = cfg.getIntProperty(CodeSwarmConfig.START_FRAME_KEY, 0);
+    String start = cfg.getStringProperty(CodeSwarmConfig.START_DATE_KEY);
+    if (start != null && start.length() > 0) {
+      try {
+        startDate = new SimpleDateFormat("yyyy-MM-dd").parse(start);
+      } catch (ParseException e) {
+        System.out.println("StartDate '" + start + "' is not a yyyy-MM-dd date");
+        System.exit(1);
+      }
+    }
+    fastForwardRelaxInterval =
+        Math.max(1, cfg.getIntProperty(CodeSwarmConfig.FAST_FORWARD_RELAX_INTERVAL_KEY, 1));
+    // frameCount is that of the last frame drawn, or of the checkpoint
+    if (startFrame > frameCount + 1 || (startDate != null && prevDate.before(startDate))) {
+      fastForwarding = true;
+      if (!offscreen) {
+        // Nothing to draw, as fast as the simulation goes
+        frameRate(1000);
+      }
+    }
 
     EDGE_LEN = cfg.getIntProperty(CodeSwarmConfig.EDGE_LENGTH_KEY);
     if (EDGE_LEN <= 0) {
@@ -457,7 +634,7 @@ public class code_swarm extends PApplet {
    * Load a colormap
    */
   public void initColors() {
-    colorAssigner = new ColorAssigner();
+    colorAssigner = new ColorAssigner(colorRandom);
     int i = 1;
     String property;
     while ((property = cfg.getColorAssignProperty(i)) != null) {
@@ -476,33 +653,84 @@ public class code_swarm extends PApplet {
    * Main loop
    */
   public void draw() {
-    long start = System.currentTimeMillis();
-    background(background); // clear screen with background color
+    profiler.startFrame();
 
     this.update(); // update state to next frame
 
+    if (fastForwarding && frameCount >= startFrame
+        && (startDate == null || !prevDate.before(startDate))) {
+      endFastForward();
+    }
+    if (!simulateOnly && !fastForwarding) {
+      drawFrame();
+    }
+    if (checkpointInterval > 0 && frameCount % checkpointInterval == 0) {
+      writeCheckpoint();
+    }
+    profiler.lap(FrameProfiler.CHECKPOINT);
+    profiler.endFrame(frameCount);
+
+    // Stop animation when we run out of data AND all nodes are dead
+    if (reachedEndOfEvents && pendingEvents.isEmpty()) {
+      coolDown = true;
+      if (!isThereLife()) {
+        // noLoop();
+        backgroundExecutor.shutdown();
+        try {
+          backgroundExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) { /* Do nothing, just exit */}
+        exit();
+      }
+    }
+    if (lastFrame > 0 && frameCount >= lastFrame && !finished) {
+      exit();
+    }
+  }
+
+  /**
+   * Start drawing the frames, once the fast-forward reached StartFrame and StartDate.
+   */
+  private void endFastForward() {
+    fastForwarding = false;
+    System.out.println("Fast-forwarded to frame " + frameCount + ", "
+        + formatter.format(prevDate));
+    if (!offscreen) {
+      frameRate(FRAME_RATE);
+    }
+  }
+
+  /**
+   * Draw the current state of the simulation and save the frame.
+   */
+  public void drawFrame() {
+    background(background); // clear screen with background color
+
     // Draw edges (for debugging only)
     if (showEdges) {
-      for (Edge edge : edges.values()) {
+      for (Edge edge : edges) {
         edge.draw();
       }
     }
+    profiler.lap(FrameProfiler.EDGES);
 
     // Surround names with aura
     // Then blur it
     if (drawNamesHalos) {
       drawPeopleNodesBlur();
     }
+    profiler.lap(FrameProfiler.NAMES_BLUR);
 
     // Then draw names again, but sharp
     if (drawNamesSharp) {
       drawPeopleNodesSharp();
     }
+    profiler.lap(FrameProfiler.NAMES_SHARP);
 
     // Draw file particles
     for (WikiNode node : livingNodes) {
       node.draw();
     }
+    profiler.lap(FrameProfiler.FILES);
 
     textFont(font);
 
@@ -526,6 +754,7 @@ public class code_swarm extends PApplet {
     if (showPopular) {
       drawPopular();
     }
+    profiler.lap(FrameProfiler.OVERLAY);
 
     if (showHistogram) {
       drawHistory();
@@ -538,6 +767,7 @@ public class code_swarm extends PApplet {
     if (showActivity) {
       drawPeopleHistory();
     }
+    profiler.lap(FrameProfiler.HISTOGRAMS);
 
     if (showDate) {
       drawDate();
@@ -546,41 +776,31 @@ public class code_swarm extends PApplet {
     if (showText) {
       drawText();
     }
+    profiler.lap(FrameProfiler.OVERLAY);
 
     if (takeSnapshots) {
       dumpFrame();
     }
-
-    // Stop animation when we run out of data AND all nodes are dead
-    if (eventsQueue.isEmpty()) {
-      coolDown = true;
-      if (!isThereLife()) {
-        // noLoop();
-        backgroundExecutor.shutdown();
-        try {
-          backgroundExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
-        } catch (InterruptedException e) { /* Do nothing, just exit */}
-        exit();
-      }
+    profiler.lap(FrameProfiler.SNAPSHOT);
+    if (videoSink != null) {
+      writeVideoFrame();
     }
-
-    long end = System.currentTimeMillis();
-    lastDrawDuration = end - start;
+    profiler.lap(FrameProfiler.VIDEO);
   }
 
   /**
    * The Physics engines may need access to the nodes
    * in calls other than onUpdate*() and onRelax*()
    */
-  public PriorityQueue<PersonNode> getLivingPeople() {
+  public ActivityRanking getLivingPeople() {
     return livingPeople;
   }
 
-  public LinkedList<Edge> getLivingEdges() {
+  public LivingSet<Edge> getLivingEdges() {
     return livingEdges;
   }
 
-  public LinkedList<WikiNode> getLivingNodes() {
+  public LivingSet<WikiNode> getLivingNodes() {
     return livingNodes;
   }
 
@@ -644,15 +864,17 @@ public class code_swarm extends PApplet {
     int x = 0;
     int heightMinusThree = height - 3;
     rectMode(CORNERS);
+    // Not the weight left behind by the edges of this or an earlier frame
+    strokeWeight(1);
 
-    for (ColorBins cb : history) {
+    int actualColor = new Color(226, 174, 20).getRGB();
+    for (int i = 0; i < history.size(); i++) {
+      ColorBins cb = history.get(i);
       if (cb.totalCount > 0) {
         int startY = 0;
         int endY = 0;
         for (int k = 0; k < cb.keyCount; ++k) {
-          int color = cb.keys[k];
-          endY += cb.colorMap.get(color);
-          int actualColor = new Color(226, 174, 20).getRGB();
+          endY += cb.counts[k];
           stroke(actualColor, 255); // 200 (nicer) vs. 255 (faster)
           rect(x, heightMinusThree - startY, x, heightMinusThree - 3 * endY);
           startY = endY;
@@ -667,8 +889,13 @@ public class code_swarm extends PApplet {
     int heightMinusThree = height - 3;
     // 以左下角为原点
     rectMode(CORNERS);
+    strokeWeight(1);
+    int color = new Color(180, 15, 15).getRGB();
+    int rangeColor = new Color(240, 120, 120).getRGB();
     if (!totalWordsHistory.isEmpty()) {
-      for (int wordNum : totalWordsHistory) {
+      // one column per frame
+      for (int i = 0; i < totalWordsHistory.size(); i++) {
+        int wordNum = totalWordsHistory.get(i);
         final int GRAPH_HEIGHT_MIN = 1;
         final int GRAPH_HEIGHT_MAX = 100;
         final int MIN_WORD = 1;
@@ -681,12 +908,19 @@ public class code_swarm extends PApplet {
                 * LOG_SCALE);
         int startY = heightMinusThree - mapTo(wordNum);
         int endY = heightMinusThree;
-        int color = new Color(180, 15, 15).getRGB();
         stroke(color, 255); // 200 (nicer) vs. 255 (faster)
 //        rect(x, 0, x, mapTo(wordNum));
 //        text(wordNum, width / 2, 10);
         // 画直线, startY是起点, endY是终点
         rect(x, startY + 50, x, endY);
+        // the range the total went through during the frame, over the column
+        int low = totalWordsMin.get(i);
+        int high = totalWordsMax.get(i);
+        if (low != high) {
+          stroke(rangeColor, 255);
+          rect(x, heightMinusThree - mapTo(max(1, high)) + 50, x,
+              min(endY, heightMinusThree - mapTo(max(1, low)) + 50));
+        }
         x++;
       }
     }
@@ -707,8 +941,11 @@ public class code_swarm extends PApplet {
     int x = width / 2 - peopleHistory.size() / 2;
     int heightMinusThree = height - 3;
     rectMode(CORNERS);
+    // Not the weight left behind by the edges of this or an earlier frame
+    strokeWeight(1);
 
-    for (int people : peopleHistory) {
+    for (int i = 0; i < peopleHistory.size(); i++) {
+      int people = peopleHistory.get(i);
       // clamp people to 1 to 500 as a reasonable interval for most projects
       // ln x where x is 1 to 500
       // ln 1 = 0
@@ -813,10 +1050,39 @@ public class code_swarm extends PApplet {
     text("Nodes: " + nodes.size(), 0, 0);
     text("People: " + people.size(), 0, 10);
 //    text("Queue: " + eventsQueue.size(), 0, 20);
-    text("Last render time: " + lastDrawDuration, 0, 20);
+    text("Last frame time: " + nf((float) profiler.getLastMillis(FrameProfiler.FRAME), 1, 2)
+        + " ms", 0, 20);
     text("Total words: " + totalWords, 0, 30);
     assert livingPeople.peek() != null;
     text("Most active editor: " + livingPeople.peek().name, 0, 40);
+    text("Physics allocations: " + physicsAllocations.getLastBytes() + " bytes/frame, GC count: "
+        + AllocationCounter.getCollectionCount(), 0, 50);
+    if (frameExporter != null) {
+      text("Frames to save: " + frameExporter.getInFlight() + ", encode time: "
+          + nf((float) frameExporter.getLastEncodeMillis(), 1, 1) + " ms (mean "
+          + nf((float) frameExporter.getMeanEncodeMillis(), 1, 1) + " ms)", 0, 60);
+    }
+    drawProfile(0, 80);
+  }
+
+  /**
+   * Draw the median, 95th percentile and maximum time of every phase over the last frames.
+   * @param x left of the table
+   * @param y top of the table
+   */
+  public void drawProfile(int x, int y) {
+    text("ms, " + profiler.getFrameCount() + " frames", x, y);
+    text("p50", x + 100, y);
+    text("p95", x + 140, y);
+    text("max", x + 180, y);
+    for (int phase = 0; phase <= FrameProfiler.PHASE_COUNT; phase++) {
+      y += 10;
+      text(FrameProfiler.getName(phase), x, y);
+      profiler.getPercentilesMillis(phase, PROFILE_FRACTIONS, profileMillis);
+      text(nf((float) profileMillis[0], 1, 2), x + 100, y);
+      text(nf((float) profileMillis[1], 1, 2), x + 140, y);
+      text(nf((float) profileMillis[2], 1, 2), x + 180, y);
+    }
   }
 
   /**
@@ -829,7 +1095,7 @@ public class code_swarm extends PApplet {
     textAlign(RIGHT, TOP);
     fill(255, 200);
     text("Popular Nodes (touches):", width - 120, 0);
-    for (WikiNode fn : nodes.values()) {
+    for (WikiNode fn : nodes) {
       if (fn.qualifies()) {
         // Insertion Sort
         if (al.size() > 0) {
@@ -880,21 +1146,313 @@ public class code_swarm extends PApplet {
     return pe;
   }
 
+  /**
+   * Append the frame to the video output, closed on error.
+   */
+  public void writeVideoFrame() {
+    loadFramePixels();
+    try {
+      videoSink.write(pixels);
+    } catch (IOException e) {
+      System.err.println("Video output stopped: " + e.getMessage());
+      closeVideo();
+    }
+  }
+
+  private void closeVideo() {
+    try {
+      videoSink.close();
+    } catch (IOException e) {
+      System.err.println("Could not close video output: " + e.getMessage());
+    }
+    videoSink = null;
+  }
+
+  /**
+   * Save the simulation to the checkpoint file, once the frames drawn so far are saved.
+   */
+  public void writeCheckpoint() {
+    File checkpointFile = new File(FrameExporter.fileName(checkpointLocation, frameCount));
+    try {
+      if (frameExporter != null) {
+        frameExporter.awaitIdle();
+      }
+      SimulationCheckpoint.write(checkpointFile, this);
+    } catch (IOException e) {
+      System.err.println("Could not write checkpoint " + checkpointFile + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return stream of the start locations and velocities of new nodes
+   */
+  public SimulationRandom getLayoutRandom() {
+    return layoutRandom;
+  }
+
+  /**
+   * @return stream of the physics engines, with a new key every frame
+   */
+  public SimulationRandom getPhysicsRandom() {
+    return physicsRandom;
+  }
+
+  /**
+   * Write the simulation state: nodes, edges, living sets, histories, position in the input
+   * and random streams.
+   * @param out stream to write
+   * @throws IOException on write error
+   * @see SimulationCheckpoint
+   */
+  void writeState(DataOutputStream out) throws IOException {
+    out.writeUTF(cfg.getStringProperty(CodeSwarmConfig.INPUT_FILE_KEY));
+    out.writeInt(frameCount);
+    out.writeInt(eventsProcessed);
+    out.writeLong(prevDate.getTime());
+    out.writeBoolean(coolDown);
+    out.writeInt(totalWords);
+    out.writeInt(maxTouches);
+    out.writeInt(nextNodeId);
+    out.writeUTF(physicsEngineSelection);
+
+    out.writeInt(nodes.size());
+    for (WikiNode n : nodes) {
+      out.writeInt(n.id);
+      writeString(out, n.name);
+      out.writeInt(n.life);
+      out.writeInt(n.touches);
+      out.writeInt(n.nodeHue);
+      writeMotion(out, n);
+    }
+    out.writeInt(people.size());
+    for (PersonNode p : people) {
+      out.writeInt(p.id);
+      writeString(out, p.name);
+      out.writeInt(p.life);
+      out.writeInt(p.touches);
+      out.writeInt(p.changeWords);
+      out.writeInt(p.fontSize);
+      out.writeInt(p.flavor);
+      out.writeInt(p.colorCount);
+      writeMotion(out, p);
+    }
+    out.writeInt(edges.size());
+    for (Edge e : edges) {
+      out.writeInt(e.nodeFrom.id);
+      out.writeInt(e.nodeTo.id);
+      out.writeInt(e.life);
+      out.writeInt(e.weight);
+      out.writeFloat(e.len);
+    }
+
+    // living sets in their current order, which the physics engines iterate in
+    out.writeInt(livingNodes.size());
+    for (WikiNode n : livingNodes) {
+      out.writeInt(n.id);
+    }
+    out.writeInt(livingPeople.size());
+    for (PersonNode p : livingPeople) {
+      out.writeInt(p.id);
+    }
+    out.writeInt(livingEdges.size());
+    for (Edge e : livingEdges) {
+      out.writeInt(e.nodeFrom.id);
+      out.writeInt(e.nodeTo.id);
+    }
+
+    out.writeInt(history.size());
+    for (int i = 0; i < history.size(); i++) {
+      ColorBins cb = history.get(i);
+      out.writeInt(cb.keyCount);
+      for (int k = 0; k < cb.keyCount; k++) {
+        out.writeInt(cb.keys[k]);
+        out.writeInt(cb.counts[k]);
+      }
+    }
+    writeIntegers(out, peopleHistory);
+    writeIntegers(out, totalWordsHistory);
+    writeIntegers(out, totalWordsMin);
+    writeIntegers(out, totalWordsMax);
+    for (SimulationRandom r : new SimulationRandom[] {layoutRandom, physicsRandom, colorRandom}) {
+      out.writeLong(r.getState());
+      out.writeLong(r.getFrameKey());
+    }
+  }
+
+  /**
+   * Restore the simulation state written by writeState(). Called from setup(), before any
+   * event is read.
+   * @param in stream to read
+   * @throws IOException on read error, or if the state belongs to another input file
+   */
+  void readState(DataInputStream in) throws IOException {
+    String inputFile = in.readUTF();
+    if (!inputFile.equals(cfg.getStringProperty(CodeSwarmConfig.INPUT_FILE_KEY))) {
+      throw new IOException("checkpoint of another input file, " + inputFile);
+    }
+    frameCount = in.readInt();
+    eventsProcessed = in.readInt();
+    prevDate = new Date(in.readLong());
+    coolDown = in.readBoolean();
+    totalWords = in.readInt();
+    maxTouches = in.readInt();
+    int nodeIdCount = in.readInt();
+    String engine = in.readUTF();
+    for (peConfig pec : mPhysicsEngineChoices) {
+      if (pec.name.equals(engine)) {
+        mPhysicsEngine = pec.pe;
+        physicsEngineSelection = pec.name;
+      }
+    }
+
+    Node[] byId = new Node[nodeIdCount];
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      int id = in.readInt();
+      String name = readString(in);
+      // registered under the id the loader will find for the name, it has not started yet
+      int fileId = fileNames.intern(name);
+      WikiNode n = new WikiNode(new Event(0, null, -1, name, fileId, 0));
+      n.id = id;
+      n.life = in.readInt();
+      n.touches = in.readInt();
+      n.nodeHue = in.readInt();
+      readMotion(in, n);
+      nodes.put(fileId, n);
+      byId[id] = n;
+    }
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      int id = in.readInt();
+      String name = readString(in);
+      PersonNode p = new PersonNode(name);
+      p.id = id;
+      p.life = in.readInt();
+      p.touches = in.readInt();
+      p.changeWords = in.readInt();
+      p.fontSize = in.readInt();
+      p.flavor = in.readInt();
+      p.colorCount = in.readInt();
+      readMotion(in, p);
+      people.put(authorNames.intern(name), p);
+      byId[id] = p;
+    }
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      WikiNode from = (WikiNode) byId[in.readInt()];
+      PersonNode to = (PersonNode) byId[in.readInt()];
+      int life = in.readInt();
+      Edge e = new Edge(from, to, in.readInt());
+      e.life = life;
+      e.len = in.readFloat();
+      edges.put(e);
+    }
+    nextNodeId = nodeIdCount;
+
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      livingNodes.add((WikiNode) byId[in.readInt()]);
+    }
+    // added in heap order, every person lands in the slot it had
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      livingPeople.add((PersonNode) byId[in.readInt()]);
+    }
+    livingPeople.updateMostActive();
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      WikiNode from = (WikiNode) byId[in.readInt()];
+      PersonNode to = (PersonNode) byId[in.readInt()];
+      livingEdges.add(findEdge(from, to));
+    }
+
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      ColorBins cb = history.next();
+      int keyCount = in.readInt();
+      for (int k = 0; k < keyCount; k++) {
+        int color = in.readInt();
+        cb.add(color, in.readInt());
+      }
+      cb.sort();
+    }
+    readIntegers(in, peopleHistory);
+    readIntegers(in, totalWordsHistory);
+    readIntegers(in, totalWordsMin);
+    readIntegers(in, totalWordsMax);
+    // Last, rebuilding the nodes above drew start locations and colors
+    for (SimulationRandom r : new SimulationRandom[] {layoutRandom, physicsRandom, colorRandom}) {
+      long state = in.readLong();
+      r.setState(state, in.readLong());
+    }
+  }
+
+  private static void writeMotion(DataOutputStream out, Node n) throws IOException {
+    out.writeFloat(n.mPosition.x);
+    out.writeFloat(n.mPosition.y);
+    out.writeFloat(n.mSpeed.x);
+    out.writeFloat(n.mSpeed.y);
+  }
+
+  private static void readMotion(DataInputStream in, Node n) throws IOException {
+    n.mPosition.x = in.readFloat();
+    n.mPosition.y = in.readFloat();
+    n.mSpeed.x = in.readFloat();
+    n.mSpeed.y = in.readFloat();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeIntegers(DataOutputStream out, IntRing values)
+      throws IOException {
+    out.writeInt(values.size());
+    for (int i = 0; i < values.size(); i++) {
+      out.writeInt(values.get(i));
+    }
+  }
+
+  private static void readIntegers(DataInputStream in, IntRing values)
+      throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      values.add(in.readInt());
+    }
+  }
+
+  /**
+   * Load the pixels of the frame to save.
+   * @throws IllegalStateException if the renderer lost the size set in setup()
+   */
+  private void loadFramePixels() {
+    loadPixels();
+    if (pixels.length != width * height || width != frameWidth || height != frameHeight) {
+      throw new IllegalStateException("Frame of " + width + "x" + height + " (" + pixels.length
+          + " pixels) instead of " + frameWidth + "x" + frameHeight);
+    }
+  }
+
   /**
    *  Take screenshot
    */
   public void dumpFrame() {
-    if (frameCount < this.maxFramesSaved) {
-      final File outputFileName = new File(SCREENSHOT_FILE);
-      final PImage image = get();
-      outputFileName.getParentFile().mkdirs();
-
-      backgroundExecutor.execute(new Runnable() {
-        public void run() {
-          image.save(outputFileName.getAbsolutePath());
-        }
-      });
-      saveFrame(SCREENSHOT_FILE);
+    if (frameExporter.accepts(frameCount)) {
+      loadFramePixels();
+      try {
+        frameExporter.submit(pixels, frameCount);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
@@ -916,46 +1474,31 @@ public class code_swarm extends PApplet {
    *  Update the particle positions
    */
   public void update() {
-    // Create a new histogram line
-    ColorBins cb = new ColorBins();
-    history.add(cb);
+    // Create a new histogram line, the oldest one drops out
+    ColorBins cb = history.next();
 
     // Create a new people histogram line
-    peopleHistory.add(new Integer(livingPeople.size()));
-    try {
-      totalWordsHistory.add(totalWords);
-    } catch (NullPointerException e) {
-      System.out.println("Exception while adding to totalWordsHistory");
-      e.printStackTrace();
-    }
+    peopleHistory.add(livingPeople.size());
+
+    // Range of the total words over the frame, from its value when the frame starts
+    int frameMinWords = totalWords;
+    int frameMaxWords = totalWords;
 
     nextDate = new Date(prevDate.getTime() + UPDATE_DELTA);
-    currentEvent = eventsQueue.peek();
+    currentEvent = peekEvent();
 
     while (currentEvent != null && currentEvent.date.before(nextDate)) {
-      if (finishedLoading) {
-        currentEvent = eventsQueue.poll();
-        if (currentEvent == null) {
-          return;
-        }
-      } else {
-        try {
-          currentEvent = eventsQueue.take();
-        } catch (InterruptedException e) {
-          System.out.println("Interrupted while fetching current event from eventsQueue");
-          e.printStackTrace();
-          continue;
-        }
-      }
+      pendingEvents.poll();
+      eventsProcessed++;
 
-      WikiNode n = findNode(currentEvent.path + currentEvent.filename);
+      WikiNode n = findNode(currentEvent.fileId);
       if (n == null) {
         n = new WikiNode(currentEvent);
-        nodes.put(currentEvent.path + currentEvent.filename, n);
-        livingNodes.addLast(n);
+        nodes.put(currentEvent.fileId, n);
+        livingNodes.add(n);
       } else {
         if (!n.isAlive()) {
-          livingNodes.addLast(n);
+          livingNodes.add(n);
         }
         n.freshen();
       }
@@ -963,43 +1506,31 @@ public class code_swarm extends PApplet {
       // add to histogram
       cb.add(n.nodeHue);
 
-      PersonNode p = findPerson(currentEvent.author);
+      PersonNode p = findPerson(currentEvent.authorId);
 
       if (p == null) {
         p = new PersonNode(currentEvent.author);
         p.changeWords += currentEvent.weight;
         p.fontSize = mapToSize(p.changeWords);
-        people.put(currentEvent.author, p);
+        people.put(currentEvent.authorId, p);
         livingPeople.add(p);
 //        System.out.println("New person " + p.name + " has changed " + p.changeWords + " words, font size is " + p.fontSize);
       } else {
         if (!p.isAlive()) {
           livingPeople.add(p);
         }
-        p.changeWords += currentEvent.weight;
+        livingPeople.addWords(p, currentEvent.weight);
         p.fontSize = mapToSize(p.changeWords);
 //        System.out.println(p.name + " has changed " + p.changeWords + " words, font size is " + p.fontSize);
         p.freshen();
       }
-      if (livingPeople.size() >= 3) {
-        PersonNode number1 = livingPeople.poll();
-        PersonNode number2 = livingPeople.poll();
-        PersonNode number3 = livingPeople.poll();
-        number1.isMostActive = true;
-        number2.isMostActive = true;
-        number3.isMostActive = true;
-        livingPeople.add(number1);
-        livingPeople.add(number2);
-        livingPeople.add(number3);
-      }
 
 
-      try {
-        totalWords += currentEvent.weight;
-        totalWordsHistory.add(totalWords);
-      } catch (NullPointerException e) {
-        System.out.println("Exception while adding to totalWordsHistory");
-        e.printStackTrace();
+      totalWords += currentEvent.weight;
+      if (totalWords < frameMinWords) {
+        frameMinWords = totalWords;
+      } else if (totalWords > frameMaxWords) {
+        frameMaxWords = totalWords;
       }
       p.addColor(n.nodeHue);
 
@@ -1007,11 +1538,11 @@ public class code_swarm extends PApplet {
       Edge ped = findEdge(n, p);
       if (ped == null) {
         ped = new Edge(n, p, edgeWeight);
-        edges.put(new Pair<WikiNode, PersonNode>(n, p), ped);
-        livingEdges.addLast(ped);
+        edges.put(ped);
+        livingEdges.add(ped);
       } else {
         if (!ped.isAlive()) {
-          livingEdges.addLast(ped);
+          livingEdges.add(ped);
         }
         ped.freshen();
       }
@@ -1024,14 +1555,7 @@ public class code_swarm extends PApplet {
 
       // prevDate = currentEvent.date;
       prevNode = n;
-      if (finishedLoading) {
-        currentEvent = eventsQueue.peek();
-      } else {
-        while (eventsQueue.isEmpty()) {
-          ;
-        }
-        currentEvent = eventsQueue.peek();
-      }
+      currentEvent = peekEvent();
     }
 
     if (!coolDown) {
@@ -1041,47 +1565,55 @@ public class code_swarm extends PApplet {
     // sort colorbins
     cb.sort();
 
-    // restrict history to drawable area
-    while (history.size() > 320) {
-      history.remove();
-    }
-
-    // restrict totalWordsHistory to drawable area
-    while (totalWordsHistory.size() > 500) {
-      totalWordsHistory.remove();
-    }
-
-    // restrict people history to drawable area
-    while (peopleHistory.size() > 500) {
-      peopleHistory.remove();
-    }
+    // one sample of the total words per frame, however many events it had
+    totalWordsHistory.add(totalWords);
+    totalWordsMin.add(frameMinWords);
+    totalWordsMax.add(frameMaxWords);
 
     // Do not allow toggle Physics Engine yet.
     safeToToggle = false;
 
+    profiler.lap(FrameProfiler.EVENTS);
+    physicsAllocations.start();
+
     // Init frame:
+    physicsRandom.nextFrame();
     mPhysicsEngine.initializeFrame();
+    profiler.lap(FrameProfiler.INIT_FRAME);
 
-    // update velocity
-    livingEdges = mPhysicsEngine.onRelaxEdges(livingEdges);
+    // Fast-forward may trade accuracy for speed: the speeds of the last relaxed frame carry on
+    if (!fastForwarding || frameCount % fastForwardRelaxInterval == 0) {
+      // update velocity
+      mPhysicsEngine.onRelaxEdges(livingEdges);
+      profiler.lap(FrameProfiler.RELAX_EDGES);
 
-    // update velocity
-    livingNodes = mPhysicsEngine.onRelaxNodes(livingNodes);
+      // update velocity
+      mPhysicsEngine.onRelaxNodes(livingNodes);
+      profiler.lap(FrameProfiler.RELAX_NODES);
 
-    // update velocity
-    livingPeople = mPhysicsEngine.onRelaxPeople(livingPeople);
+      // update velocity
+      mPhysicsEngine.onRelaxPeople(livingPeople);
+      profiler.lap(FrameProfiler.RELAX_PEOPLE);
+    }
 
-    // update position
-    livingEdges = mPhysicsEngine.onUpdateEdges(livingEdges);
+    // update position, removing dead elements in place
+    mPhysicsEngine.onUpdateEdges(livingEdges);
+    profiler.lap(FrameProfiler.UPDATE_EDGES);
 
-    // update position
-    livingNodes = mPhysicsEngine.onUpdateNodes(livingNodes);
+    // update position, removing dead elements in place
+    mPhysicsEngine.onUpdateNodes(livingNodes);
+    profiler.lap(FrameProfiler.UPDATE_NODES);
 
-    // update position
-    livingPeople = mPhysicsEngine.onUpdatePeople(livingPeople);
+    // update position, removing dead people in place
+    mPhysicsEngine.onUpdatePeople(livingPeople);
+    livingPeople.updateMostActive();
+    profiler.lap(FrameProfiler.UPDATE_PEOPLE);
 
     // Finalize frame:
     mPhysicsEngine.finalizeFrame();
+    profiler.lap(FrameProfiler.FINALIZE_FRAME);
+
+    physicsAllocations.stop();
 
     safeToToggle = true;
     if (wantToToggle == true) {
@@ -1098,12 +1630,12 @@ public class code_swarm extends PApplet {
   }
 
   /**
-   * Searches the nodes array for a given name
-   * @param name
+   * Searches the nodes array for a given filename id
+   * @param fileId id of the filename, from the event
    * @return FileNode with matching name or null if not found.
    */
-  public WikiNode findNode(String name) {
-    return nodes.get(name);
+  public WikiNode findNode(int fileId) {
+    return nodes.get(fileId);
   }
 
   /**
@@ -1113,16 +1645,16 @@ public class code_swarm extends PApplet {
    * @return Edge connecting n1 to n2 or null if not found
    */
   public Edge findEdge(WikiNode n1, PersonNode n2) {
-    return edges.get(new Pair<WikiNode, PersonNode>(n1, n2));
+    return edges.get(n1, n2);
   }
 
   /**
-   * Searches the people array for a given name.
-   * @param name
+   * Searches the people array for a given author id.
+   * @param authorId id of the author, from the event
    * @return PersonNode for given name or null if not found.
    */
-  public PersonNode findPerson(String name) {
-    return people.get(name);
+  public PersonNode findPerson(int authorId) {
+    return people.get(authorId);
   }
 
   /**
@@ -1131,16 +1663,40 @@ public class code_swarm extends PApplet {
    */
   public void loadRepEvents(String filename) {
     final String fullFilename = filename;
+    String defaultFormat = filename.endsWith(BinaryEventLog.EXTENSION) ? "binary" : "xml";
+    boolean binary = cfg.getStringProperty(CodeSwarmConfig.INPUT_FORMAT_KEY, defaultFormat)
+        .equalsIgnoreCase("binary");
+
+    // after a resume, the events already processed are skipped
+    Runnable eventLoader = new EventQueueLoader(fullFilename, eventsQueue, isInputSorted, binary,
+        eventsProcessed);
 
-    Runnable eventLoader = new XMLQueueLoader(fullFilename, eventsQueue, isInputSorted);
+    // unsorted input is sorted by the loader too, the first event shows up when the whole
+    // file has been read and the merge of the sorted runs begins
+    backgroundExecutor.execute(eventLoader);
+  }
 
-    if (isInputSorted) {
-      backgroundExecutor.execute(eventLoader);
-    } else
-    //we have to load all of the data before we can continue if it isn't sorted
-    {
-      eventLoader.run();
+  /**
+   * Next event to process, left in place. Blocks until the loader thread provides one, then
+   * takes every event already waiting in eventsQueue at once.
+   * @return next event, null once every event has been processed
+   */
+  Event peekEvent() {
+    while (pendingEvents.isEmpty() && !reachedEndOfEvents) {
+      try {
+        pendingEvents.add(eventsQueue.take());
+      } catch (InterruptedException e) {
+        System.out.println("Interrupted while fetching current event from eventsQueue");
+        e.printStackTrace();
+        continue;
+      }
+      eventsQueue.drainTo(pendingEvents);
+      if (pendingEvents.peekLast() == endOfEvents) {
+        pendingEvents.removeLast();
+        reachedEndOfEvents = true;
+      }
     }
+    return pendingEvents.peek();
   }
 
   /*
@@ -1273,77 +1829,84 @@ public class code_swarm extends PApplet {
     looping = !looping;
   }
 
-  private class XMLQueueLoader implements Runnable {
+  /**
+   * Reads the input file, file_events XML or binary event log, into the events queue
+   */
+  private class EventQueueLoader implements Runnable {
 
     private final String fullFilename;
     private BlockingQueue<Event> queue;
     boolean isXMLSorted;
+    boolean isBinary;
+    /** Number of events to drop from the start of the (sorted) input */
+    private final int skip;
+    private int skipped = 0;
 
-    private XMLQueueLoader(String fullFilename, BlockingQueue<Event> queue,
-        boolean isXMLSorted) {
+    private EventQueueLoader(String fullFilename, BlockingQueue<Event> queue,
+        boolean isXMLSorted, boolean isBinary, int skip) {
       this.fullFilename = fullFilename;
       this.queue = queue;
       this.isXMLSorted = isXMLSorted;
+      this.isBinary = isBinary;
+      this.skip = skip;
     }
 
     public void run() {
-      XMLReader reader = null;
-      try {
-        reader = XMLReaderFactory.createXMLReader();
-      } catch (SAXException e) {
-        System.out.println("Couldn't find/create an XML SAX Reader");
-        e.printStackTrace();
-        System.exit(1);
-      }
-      reader.setContentHandler(new DefaultHandler() {
-        public void startElement(String uri, String localName, String name,
-            Attributes atts) throws SAXException {
-          if (name.equals("event")) {
-            String eventFilename = atts.getValue("filename");
-            String eventDatestr = atts.getValue("date");
-            long eventDate = Long.parseLong(eventDatestr);
-            String eventWeightStr = atts.getValue("weight");
-            int eventWeight = 1;
-            if (eventWeightStr != null) {
-              eventWeight = Integer.parseInt(eventWeightStr);
-            }
-
-            //It's difficult for the user to tell that they're missing events,
-            //so we should crash in this case
-            if (isXMLSorted) {
-              if (eventDate < maximumDateSeenSoFar) {
-                System.out.println(
-                    "Input not sorted, you must set IsInputSorted to false in your config file");
-                System.exit(1);
-              } else {
-                maximumDateSeenSoFar = eventDate;
-              }
-            }
-
-            String eventAuthor = atts.getValue("author");
-            // int eventLinesAdded = atts.getValue( "linesadded" );
-            // int eventLinesRemoved = atts.getValue( "linesremoved" );
-
-            Event evt = new Event(eventDate, eventAuthor, "", eventFilename, eventWeight);
-            try {
-              queue.put(evt);
-            } catch (InterruptedException e) {
-              System.out.println("Interrupted while trying to put into eventsQueue");
-              e.printStackTrace();
+      EventStreamReader.Handler handler = new EventStreamReader.Handler() {
+        public void event(String eventFilename, long eventDate, String eventAuthor,
+            int eventWeight) throws InterruptedException {
+          //It's difficult for the user to tell that they're missing events,
+          //so we should crash in this case
+          if (isXMLSorted) {
+            if (eventDate < maximumDateSeenSoFar) {
+              System.out.println(
+                  "Input not sorted, you must set IsInputSorted to false in your config file");
               System.exit(1);
+            } else {
+              maximumDateSeenSoFar = eventDate;
             }
           }
-        }
+          if (skipped < skip) {
+            skipped++;
+            return;
+          }
 
-        public void endDocument() {
-          finishedLoading = true;
+          queue.put(new Event(eventDate, eventAuthor, authorNames.intern(eventAuthor),
+              eventFilename, fileNames.intern(eventFilename), eventWeight));
         }
-      });
+      };
+      ExternalEventSorter sorter = null;
+      if (!isXMLSorted) {
+        sorter = new ExternalEventSorter(sortRunSize, handler);
+        handler = sorter;
+      }
       try {
-        reader.parse(fullFilename);
+        if (isBinary) {
+          BinaryEventLog.read(new File(fullFilename), handler);
+        } else {
+          InputStream in = new FileInputStream(fullFilename);
+          try {
+            new EventStreamReader().read(in, handler);
+          } finally {
+            in.close();
+          }
+        }
+        if (sorter != null) {
+          sorter.finish();
+        }
+        if (skipped < skip) {
+          System.out.println("The checkpoint is " + skip + " events into the history, but "
+              + fullFilename + " only has " + skipped);
+          System.exit(1);
+        }
+        finishedLoading = true;
+        queue.put(endOfEvents);
+      } catch (InterruptedException e) {
+        System.out.println("Interrupted while trying to put into eventsQueue");
+        e.printStackTrace();
+        System.exit(1);
       } catch (Exception e) {
-        // TODO Auto-generated catch block
-        System.out.println("Error parsing xml:");
+        System.out.println(isBinary ? "Error reading binary event log:" : "Error parsing xml:");
         e.printStackTrace();
         System.exit(1);
       }
@@ -1412,25 +1975,22 @@ public class code_swarm extends PApplet {
 
     Date date;
     String author;
+    /** Id of the author in authorNames */
+    int authorId;
     String filename;
-    String path;
+    /** Id of the filename in fileNames */
+    int fileId;
     int weight;
 
-    /**
-     * short constructor with base data
-     */
-    Event(long datenum, String author, String path, String filename) {
-      this(datenum, author, path, filename, 1);
-    }
-
     /**
      * constructor with weight
      */
-    Event(long datenum, String author, String path, String filename, int weight) {
+    Event(long datenum, String author, int authorId, String filename, int fileId, int weight) {
       this.date = new Date(datenum);
       this.author = author;
-      this.path = path;
+      this.authorId = authorId;
       this.filename = filename;
+      this.fileId = fileId;
       this.weight = weight;
     }
 
@@ -1550,6 +2110,10 @@ public class code_swarm extends PApplet {
     protected Vector2f mPosition;
     protected Vector2f mSpeed;
     protected float maxSpeed = DEFAULT_NODE_SPEED;
+    /**
+     * dense id, in creation order, indexing what is kept per node like NodeStore's frames
+     */
+    protected int id;
 
     /**
      * mass of the node
@@ -1561,10 +2125,55 @@ public class code_swarm extends PApplet {
      */
     Node(int lifeInit, int lifeDecrement) {
       super(lifeInit, lifeDecrement);
+      id = nextNodeId++;
       mPosition = new Vector2f();
       mSpeed = new Vector2f();
     }
 
+    /**
+     * edges of the node, in creation order, filled by EdgeTable.put()
+     */
+    private Edge[] edgeList;
+    private int edgeCount = 0;
+
+    void addEdge(Edge e) {
+      if (edgeList == null) {
+        edgeList = new Edge[4];
+      } else if (edgeCount == edgeList.length) {
+        Edge[] grown = new Edge[edgeCount * 2];
+        System.arraycopy(edgeList, 0, grown, 0, edgeCount);
+        edgeList = grown;
+      }
+      edgeList[edgeCount++] = e;
+    }
+
+    /**
+     * @return number of edges of the node, dead or alive
+     */
+    public int getEdgeCount() {
+      return edgeCount;
+    }
+
+    /**
+     * Iterate the edges of a node without going through the edge table:
+     * <pre>
+     *   for (int i = 0; i &lt; n.getEdgeCount(); i++) { Edge e = n.getEdge(i); ... }
+     * </pre>
+     * @param i index between 0 and getEdgeCount() - 1
+     * @return edge of the node
+     */
+    public Edge getEdge(int i) {
+      return edgeList[i];
+    }
+
+    /**
+     * Hash of the id instead of the identity, so that the maps keyed by nodes iterate in the
+     * same order in every run.
+     */
+    public int hashCode() {
+      return id;
+    }
+
   }
 
   /**
@@ -1589,7 +2198,7 @@ public class code_swarm extends PApplet {
      */
     WikiNode(Event fe) {
       super(FILE_LIFE_INIT, FILE_LIFE_DECREMENT); // 255, -2
-      name = fe.path + fe.filename;
+      name = fe.filename;
       touches = fe.weight;
       life = FILE_LIFE_INIT;
       colorMode(RGB);
@@ -1727,7 +2336,10 @@ public class code_swarm extends PApplet {
     protected int touches;
     public int changeWords = 0;
     private int fontSize = 10;
-    private boolean isMostActive = false;
+    /** Set by the ActivityRanking while among the most active living people */
+    protected boolean isMostActive = false;
+    /** Slot in the ActivityRanking heap, -1 when not ranked */
+    protected int rankIndex = -1;
 
     /**
      * 1) constructor.
@@ -1795,20 +2407,65 @@ public class code_swarm extends PApplet {
     }
   }
 
+  /**
+   * Listen to input and resize events, unless frames are driven by HeadlessRender.
+   * Offscreen, PApplet's resize listener would resize the renderer to the bounds of the
+   * component from the AWT event thread, racing with size() in setup().
+   */
+  public void addListeners() {
+    if (!offscreen) {
+      super.addListeners();
+    }
+  }
+
+  /**
+   * Start the animation thread, unless frames are driven by HeadlessRender.
+   */
+  public void start() {
+    if (!offscreen) {
+      super.start();
+    }
+  }
+
+  /**
+   * Quit once the frames are saved and the video closed, or only stop drawing when frames are driven by
+   * HeadlessRender.
+   */
+  public void exit() {
+    if (frameExporter != null) {
+      try {
+        frameExporter.finish();
+      } catch (InterruptedException e) { /* Do nothing, just exit */}
+    }
+    if (videoSink != null) {
+      closeVideo();
+    }
+    profiler.close();
+    if (offscreen) {
+      finished = true;
+    } else {
+      super.exit();
+    }
+  }
+
   /**
    * code_swarm Entry point.
-   * @param args : should be the path to the config file
+   * @param args : should be the path to the config file, optionally followed by Key=Value
+   *        settings overriding the ones of the file
    */
   static public void main(String args[]) {
     try {
       if (args.length > 0) {
         cfg = new CodeSwarmConfig(args[0]);
+        cfg.setOverrides(args, 1);
         PApplet.main(new String[]{"code_swarm"});
       } else {
         System.err.println("Specify a config file.");
       }
     } catch (IOException e) {
       System.err.println("Failed due to exception: " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
     }
   }
 
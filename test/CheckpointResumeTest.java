@@ -0,0 +1,113 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @brief Saves numbered checkpoints, then resumes from the latest one
+ *
+ * Renders 250 frames with CheckpointLocation=ck-#####.ckpt and a save every 100 frames, then
+ * renders again with Resume=true: the second run must pick ck-00200.ckpt and draw the same
+ * last 50 frames as the first. Resuming from a pattern without any snapshot must fail.
+ *
+ * Each render runs in its own JVM, like HeadlessRender from the command line. Run with
+ * <pre>
+ *   ant test
+ * </pre>
+ */
+public class CheckpointResumeTest {
+
+  public static void main(String[] args) throws Exception {
+    File dir = Files.createTempDirectory("code_swarm-test").toFile();
+    String pattern = new File(dir, "ck-#####.ckpt").getPath();
+    File full = new File(dir, "full.y4m");
+    File resumed = new File(dir, "resumed.y4m");
+
+    String output = render(0, "VideoOutput=" + full, "CheckpointInterval=100",
+        "CheckpointLocation=" + pattern, "LastFrame=250");
+    check(new File(dir, "ck-00100.ckpt").isFile(), "no checkpoint at frame 100:\n" + output);
+    check(new File(dir, "ck-00200.ckpt").isFile(), "no checkpoint at frame 200:\n" + output);
+    check(new File(dir, "ck-00200.ckpt").equals(SimulationCheckpoint.latest(pattern)),
+        "latest() did not pick frame 200");
+
+    output = render(0, "VideoOutput=" + resumed, "CheckpointLocation=" + pattern,
+        "Resume=true", "LastFrame=250");
+    check(output.contains("after frame 200"), "did not resume after frame 200:\n" + output);
+    check(endsWith(Files.readAllBytes(full.toPath()), Files.readAllBytes(resumed.toPath())),
+        "the resumed frames differ from the uninterrupted render");
+
+    output = render(1, "VideoOutput=" + resumed,
+        "CheckpointLocation=" + new File(dir, "none-#####.ckpt"), "Resume=true");
+    check(output.contains("No checkpoint"), "missing checkpoint not reported:\n" + output);
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+    System.out.println("CheckpointResumeTest passed");
+  }
+
+  /**
+   * Render data/sample.config in a new JVM.
+   * @param status expected exit status
+   * @param settings Key=Value settings added to the fixed size and seed
+   * @return everything the render printed
+   */
+  private static String render(int status, String... settings)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("--add-opens");
+    command.add("java.desktop/java.awt=ALL-UNNAMED");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.addAll(Arrays.asList("HeadlessRender", "data/sample.config", "Width=320",
+        "Height=240", "RandomSeed=7", "ShowDebug=false", "TakeSnapshots=false",
+        "PhysicsEngineSelection=PhysicsEngineWiki"));
+    command.addAll(Arrays.asList(settings));
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    StringBuilder output = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      output.append(line).append('\n');
+    }
+    int exitValue = process.waitFor();
+    check(exitValue == status, "exit status " + exitValue + " instead of " + status + ":\n"
+        + output);
+    return output.toString();
+  }
+
+  /**
+   * @return true if the frames of the resumed video are the last frames of the full one
+   */
+  private static boolean endsWith(byte[] full, byte[] resumed) {
+    // both start with the same stream header, then frames of the same size
+    int header = 0;
+    while (header < resumed.length && resumed[header] != '\n') {
+      header++;
+    }
+    int frames = resumed.length - header - 1;
+    if (frames <= 0 || frames > full.length - header - 1) {
+      return false;
+    }
+    for (int i = 1; i <= frames; i++) {
+      if (full[full.length - i] != resumed[resumed.length - i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      System.err.println("CheckpointResumeTest failed: " + message);
+      System.exit(1);
+    }
+  }
+}